@@ -0,0 +1,57 @@
+package com.probe;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs a program that was parsed and resolved once. The tree keeps its inline caches and compiled code between
+ * iterations, so this measures a warmed up program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({"fib", "closures", "arrays", "strings", "large"})
+    String workload;
+
+    private List<Stmt> stmts;
+    private Globals globals;
+    private ErrorReporter reporter;
+
+    @Setup
+    public void setUp() {
+        String source = Workloads.source(workload);
+        reporter = Workloads.reporter(source);
+        TokenStream tokens = new Lexer(source, reporter).scan();
+        stmts = new Optimizer().optimize(new Parser(tokens, reporter).parse());
+        globals = new Globals();
+        Resolver resolver = new Resolver(globals, reporter);
+        resolver.resolve(stmts);
+        if (resolver.isError()) {
+            throw new IllegalStateException(workload + " does not resolve");
+        }
+    }
+
+    @Benchmark
+    public Interpreter interpret() {
+        Interpreter interpreter = new Interpreter(reporter, globals);
+        interpreter.interpret(stmts);
+        return interpreter;
+    }
+}
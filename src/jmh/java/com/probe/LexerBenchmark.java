@@ -0,0 +1,41 @@
+package com.probe;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"fib", "closures", "arrays", "strings", "large"})
+    String workload;
+
+    private String source;
+    private ErrorReporter reporter;
+
+    @Setup
+    public void setUp() {
+        source = Workloads.source(workload);
+        reporter = Workloads.reporter(source);
+    }
+
+    @Benchmark
+    public TokenStream scan() {
+        return new Lexer(source, reporter).scan();
+    }
+}
@@ -0,0 +1,99 @@
+package com.probe;
+
+/**
+ * Probe programs the benchmarks run. None of them print, so a benchmark measures the language and not the console.
+ */
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    static String source(String name) {
+        switch (name) {
+            case "fib":
+                return fib();
+            case "closures":
+                return closures();
+            case "arrays":
+                return arrays();
+            case "strings":
+                return strings();
+            case "large":
+                return large();
+        }
+        throw new IllegalArgumentException("unknown workload " + name);
+    }
+
+    static ErrorReporter reporter(String source) {
+        return new ErrorReporter(source);
+    }
+
+    private static String fib() {
+        return "fn fib(n) {\n"
+                + "    if (n == 0 or n == 1) return n;\n"
+                + "    return fib(n - 1) + fib(n - 2);\n"
+                + "}\n"
+                + "var result = fib(20);\n";
+    }
+
+    // the counter from the README, called until it has squared ten thousand numbers
+    private static String closures() {
+        return "var holder = fn() {\n"
+                + "    var x = 1;\n"
+                + "    return fn(y) {\n"
+                + "        var result = y * x;\n"
+                + "        x = x + 1;\n"
+                + "        return result;\n"
+                + "    };\n"
+                + "};\n"
+                + "var sum = 0;\n"
+                + "for (var round = 0; round < 100; round = round + 1) {\n"
+                + "    var counter = holder();\n"
+                + "    for (var i = 1; i <= 100; i = i + 1) {\n"
+                + "        sum = sum + counter(i);\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    // set copies the array, so filling one element by element is quadratic
+    private static String arrays() {
+        StringBuilder source = new StringBuilder("var arr = [");
+        for (int i = 0; i < 200; ++i) {
+            source.append(i == 0 ? "0" : ", 0");
+        }
+        return source.append("];\n")
+                .append("for (var i = 0; i < len(arr); i = i + 1) {\n")
+                .append("    arr = set(arr, i, i * i);\n")
+                .append("}\n")
+                .append("var last = arr[len(arr) - 1];\n")
+                .toString();
+    }
+
+    private static String strings() {
+        return "var s = \"\";\n"
+                + "for (var i = 0; i < 2000; i = i + 1) {\n"
+                + "    s = s + \"ab\";\n"
+                + "}\n"
+                + "var length = len(s);\n";
+    }
+
+    // many small functions, each declared and called once, the way generated code tends to look
+    private static String large() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 2000; ++i) {
+            source.append("// function ").append(i).append('\n')
+                    .append("fn f").append(i).append("(a, b) {\n")
+                    .append("    var x = a * 2 + b;\n")
+                    .append("    if (x > 10 and b != 0) {\n")
+                    .append("        x = x - 1;\n")
+                    .append("    } else {\n")
+                    .append("        x = x + ").append(i % 7).append(";\n")
+                    .append("    }\n")
+                    .append("    var parts = [x, a, b, \"f").append(i).append("\"];\n")
+                    .append("    return parts[0];\n")
+                    .append("}\n")
+                    .append("var r").append(i).append(" = f").append(i).append('(').append(i).append(", 3);\n");
+        }
+        return source.toString();
+    }
+}
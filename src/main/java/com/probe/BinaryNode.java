@@ -0,0 +1,389 @@
+package com.probe;
+
+/**
+ * Executable form of an {@link Expr.Binary}. A node starts uninitialized, looks at the operand types the first
+ * time it runs and replaces itself with a node specialized for them. A specialized node that sees other types
+ * rewrites itself to the generic node, which never specializes again.
+ */
+abstract class BinaryNode {
+    final Expr.Binary expr;
+
+    BinaryNode(Expr.Binary expr) {
+        this.expr = expr;
+    }
+
+    static BinaryNode create(Expr.Binary expr) {
+        return new Uninitialized(expr);
+    }
+
+    abstract Object execute(Interpreter interpreter);
+
+    double executeDouble(Interpreter interpreter) throws UnexpectedResultException {
+        return expectDouble(execute(interpreter));
+    }
+
+    /**
+     * Whether this node currently expects to produce a number, so callers can take the unboxed path.
+     */
+    boolean producesDouble() {
+        return false;
+    }
+
+    static double expectDouble(Object value) throws UnexpectedResultException {
+        if (value instanceof Double) {
+            return (double) value;
+        }
+        throw new UnexpectedResultException(value);
+    }
+
+    final Object rewrite(BinaryNode node, Object left, Object right) {
+        expr.node = node;
+        return node.executeWith(left, right);
+    }
+
+    final Object generalize(Object left, Object right) {
+        return rewrite(new Generic(expr), left, right);
+    }
+
+    /**
+     * Continues an evaluation whose operands were already computed by the node being replaced.
+     */
+    abstract Object executeWith(Object left, Object right);
+
+    private static final class Uninitialized extends BinaryNode {
+        Uninitialized(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object left = interpreter.eval(expr.left);
+            Object right = interpreter.eval(expr.right);
+            return executeWith(left, right);
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            return rewrite(specialize(left, right), left, right);
+        }
+
+        private BinaryNode specialize(Object left, Object right) {
+            boolean numbers = left instanceof Double && right instanceof Double;
+            switch (expr.operator.type) {
+                case PLUS:
+                    if (numbers) return new Add(expr);
+                    if (Values.isString(left) && Values.isString(right)) return new Concat(expr);
+                    break;
+                case MINUS:
+                    if (numbers) return new Subtract(expr);
+                    break;
+                case STAR:
+                    if (numbers) return new Multiply(expr);
+                    break;
+                case SLASH:
+                    if (numbers) return new Divide(expr);
+                    break;
+                case LESS:
+                    if (numbers) return new Less(expr);
+                    break;
+                case LESS_EQUAL:
+                    if (numbers) return new LessEqual(expr);
+                    break;
+                case GREATER:
+                    if (numbers) return new Greater(expr);
+                    break;
+                case GREATER_EQUAL:
+                    if (numbers) return new GreaterEqual(expr);
+                    break;
+                case EQUAL_EQUAL:
+                    return new Equal(expr);
+                case BANG_EQUAL:
+                    return new NotEqual(expr);
+            }
+            return new Generic(expr);
+        }
+    }
+
+    /**
+     * Numeric operator on two doubles. Operands are evaluated unboxed and a result is only boxed
+     * when the consumer needs an object.
+     */
+    private abstract static class Arithmetic extends BinaryNode {
+        Arithmetic(Expr.Binary expr) {
+            super(expr);
+        }
+
+        abstract double compute(double left, double right);
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            double left;
+            try {
+                left = interpreter.evalDouble(expr.left);
+            } catch (UnexpectedResultException e) {
+                return generalize(e.result, interpreter.eval(expr.right));
+            }
+            try {
+                return compute(left, interpreter.evalDouble(expr.right));
+            } catch (UnexpectedResultException e) {
+                return generalize(left, e.result);
+            }
+        }
+
+        @Override
+        double executeDouble(Interpreter interpreter) throws UnexpectedResultException {
+            double left;
+            try {
+                left = interpreter.evalDouble(expr.left);
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(e.result, interpreter.eval(expr.right)));
+            }
+            try {
+                return compute(left, interpreter.evalDouble(expr.right));
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(left, e.result));
+            }
+        }
+
+        @Override
+        boolean producesDouble() {
+            return true;
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return compute((double) left, (double) right);
+            }
+            return generalize(left, right);
+        }
+    }
+
+    private abstract static class Comparison extends BinaryNode {
+        Comparison(Expr.Binary expr) {
+            super(expr);
+        }
+
+        abstract boolean compare(double left, double right);
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            double left;
+            try {
+                left = interpreter.evalDouble(expr.left);
+            } catch (UnexpectedResultException e) {
+                return generalize(e.result, interpreter.eval(expr.right));
+            }
+            try {
+                return compare(left, interpreter.evalDouble(expr.right));
+            } catch (UnexpectedResultException e) {
+                return generalize(left, e.result);
+            }
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return compare((double) left, (double) right);
+            }
+            return generalize(left, right);
+        }
+    }
+
+    private static final class Add extends Arithmetic {
+        Add(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        double compute(double left, double right) {
+            return left + right;
+        }
+    }
+
+    private static final class Subtract extends Arithmetic {
+        Subtract(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        double compute(double left, double right) {
+            return left - right;
+        }
+    }
+
+    private static final class Multiply extends Arithmetic {
+        Multiply(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        double compute(double left, double right) {
+            return left * right;
+        }
+    }
+
+    private static final class Divide extends Arithmetic {
+        Divide(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        double compute(double left, double right) {
+            return left / right;
+        }
+    }
+
+    private static final class Less extends Comparison {
+        Less(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        boolean compare(double left, double right) {
+            return left < right;
+        }
+    }
+
+    private static final class LessEqual extends Comparison {
+        LessEqual(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        boolean compare(double left, double right) {
+            return left <= right;
+        }
+    }
+
+    private static final class Greater extends Comparison {
+        Greater(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        boolean compare(double left, double right) {
+            return left > right;
+        }
+    }
+
+    private static final class GreaterEqual extends Comparison {
+        GreaterEqual(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        boolean compare(double left, double right) {
+            return left >= right;
+        }
+    }
+
+    private static final class Concat extends BinaryNode {
+        Concat(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            return executeWith(interpreter.eval(expr.left), interpreter.eval(expr.right));
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            if (Values.isString(left) && Values.isString(right)) {
+                return Values.concat(left, right);
+            }
+            return generalize(left, right);
+        }
+    }
+
+    private static final class Equal extends BinaryNode {
+        Equal(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            return executeWith(interpreter.eval(expr.left), interpreter.eval(expr.right));
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            return Values.isEqual(left, right);
+        }
+    }
+
+    private static final class NotEqual extends BinaryNode {
+        NotEqual(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            return executeWith(interpreter.eval(expr.left), interpreter.eval(expr.right));
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            return !Values.isEqual(left, right);
+        }
+    }
+
+    private static final class Generic extends BinaryNode {
+        Generic(Expr.Binary expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            return executeWith(interpreter.eval(expr.left), interpreter.eval(expr.right));
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            Token operator = expr.operator;
+            switch (operator.type) {
+                case PLUS:
+                    if (left instanceof Double && right instanceof Double) {
+                        return (double) left + (double) right;
+                    }
+                    if (Values.isString(left) && Values.isString(right)) {
+                        return Values.concat(left, right);
+                    }
+                    throw new RuntimeError(operator, "str or num", ErrorReporter.Mode.COVER);
+                case MINUS:
+                    validateNumbers(operator, left, right);
+                    return (double) left - (double) right;
+                case STAR:
+                    validateNumbers(operator, left, right);
+                    return (double) left * (double) right;
+                case SLASH:
+                    validateNumbers(operator, left, right);
+                    return (double) left / (double) right;
+                case LESS:
+                    validateNumbers(operator, left, right);
+                    return (double) left < (double) right;
+                case LESS_EQUAL:
+                    validateNumbers(operator, left, right);
+                    return (double) left <= (double) right;
+                case GREATER:
+                    validateNumbers(operator, left, right);
+                    return (double) left > (double) right;
+                case GREATER_EQUAL:
+                    validateNumbers(operator, left, right);
+                    return (double) left >= (double) right;
+                case EQUAL_EQUAL:
+                    return Values.isEqual(left, right);
+                case BANG_EQUAL:
+                    return !Values.isEqual(left, right);
+            }
+            return null;
+        }
+
+        private void validateNumbers(Token operator, Object left, Object right) {
+            if (!(left instanceof Double && right instanceof Double)) {
+                throw new RuntimeError(operator, "DOUBLE NO", ErrorReporter.Mode.COVER);
+            }
+        }
+    }
+}
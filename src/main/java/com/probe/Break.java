@@ -1,5 +0,0 @@
-package com.probe;
-
-
-class Break extends RuntimeException {
-}
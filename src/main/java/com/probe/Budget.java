@@ -0,0 +1,63 @@
+package com.probe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How much work a script may do: an amount of fuel, of which every loop iteration and every call of a Probe
+ * function burns a unit, and a deadline. The interpreter and the VM take fuel a batch at a time and count it down
+ * in a field of their own, so the shared counter and the clock are only looked at once a batch. The interpreters
+ * forked for tasks and parallel builtins draw on the same budget; fuel left in a batch when one of them finishes
+ * is lost.
+ */
+public final class Budget {
+    static final int BATCH = 1024;
+    static final long UNLIMITED = -1;
+
+    private final AtomicLong fuel;
+    private final boolean metered;
+    private final long deadline;
+    private final boolean timed;
+
+    /**
+     * @param fuel units of fuel, or {@link #UNLIMITED}
+     * @param timeoutMillis milliseconds from now to the deadline, or {@link #UNLIMITED}
+     */
+    Budget(long fuel, long timeoutMillis) {
+        this.fuel = new AtomicLong(fuel);
+        this.metered = fuel != UNLIMITED;
+        this.timed = timeoutMillis != UNLIMITED;
+        this.deadline = timed ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+    }
+
+    /**
+     * Takes the next batch of fuel, no more than is left, and returns its size. Fails at token, where the last
+     * batch ran out, when there is no fuel left or the deadline has passed.
+     */
+    public int take(Token token) {
+        int batch = take();
+        if (batch == 0) {
+            throw new RuntimeError(token, "Script ran out of fuel.", ErrorReporter.Mode.COVER);
+        }
+        if (timed && System.nanoTime() - deadline > 0) {
+            throw new RuntimeError(token, "Script ran past its deadline.", ErrorReporter.Mode.COVER);
+        }
+        return batch;
+    }
+
+    private int take() {
+        if (!metered) {
+            return BATCH;
+        }
+        while (true) {
+            long left = fuel.get();
+            if (left <= 0) {
+                return 0;
+            }
+            int batch = (int) Math.min(BATCH, left);
+            if (fuel.compareAndSet(left, left - batch)) {
+                return batch;
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.probe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.probe.builtin.ExecutionException;
+
+/**
+ * Inline cache of an {@link Expr.Call}. The first call remembers its target: the declaration for Probe
+ * functions, so every closure created from it hits, or the instance for builtins. While the same target comes
+ * back the arity check is skipped. A call site that sees a second target goes megamorphic for good.
+ */
+abstract class CallNode {
+    final Expr.Call expr;
+
+    CallNode(Expr.Call expr) {
+        this.expr = expr;
+    }
+
+    static CallNode create(Expr.Call expr) {
+        return new Uninitialized(expr);
+    }
+
+    abstract Object execute(Interpreter interpreter);
+
+    final List<Object> arguments(Interpreter interpreter) {
+        List<Expr> expressions = expr.arguments;
+        List<Object> arguments = new ArrayList<>(expressions.size());
+        for (int i = 0; i < expressions.size(); ++i) {
+            arguments.add(interpreter.eval(expressions.get(i)));
+        }
+        return arguments;
+    }
+
+    /**
+     * Evaluates the call of a {@code return f(...)}. A Probe function is not called but handed back as a
+     * {@link TailCall} for the caller's {@link ProbeFunction#call} to make.
+     */
+    final Object executeTail(Interpreter interpreter) {
+        Object callee = interpreter.eval(expr.callee);
+        List<Object> arguments = arguments(interpreter);
+        if (callee instanceof ProbeFunction) {
+            ProbeFunction function = (ProbeFunction) callee;
+            if (function.parameters() != arguments.size()) {
+                throw new RuntimeError(expr.rightParen, "not enough arguments to call", ErrorReporter.Mode.COVER);
+            }
+            return new TailCall(function, arguments);
+        }
+        return dispatch(interpreter, callee, arguments);
+    }
+
+    final Object megamorphic(Interpreter interpreter, Object callee, List<Object> arguments) {
+        expr.node = new Megamorphic(expr);
+        return dispatch(interpreter, callee, arguments);
+    }
+
+    final Object dispatch(Interpreter interpreter, Object callee, List<Object> arguments) {
+        Callable callable = (Callable) callee;
+        if (callable.parameters() != arguments.size()) {
+            throw new RuntimeError(expr.rightParen, "not enough arguments to call", ErrorReporter.Mode.COVER);
+        }
+        return invoke(interpreter, callable, arguments);
+    }
+
+    final Object invoke(Interpreter interpreter, Callable callable, List<Object> arguments) {
+        try {
+            return callable.call(interpreter, arguments);
+        } catch (ExecutionException e) {
+            throw new RuntimeError(expr.rightParen, e.getMessage(), ErrorReporter.Mode.COVER);
+        }
+    }
+
+    private static final class Uninitialized extends CallNode {
+        Uninitialized(Expr.Call expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object callee = interpreter.eval(expr.callee);
+            List<Object> arguments = arguments(interpreter);
+            Object result;
+            if (callee instanceof ProbeFunction) {
+                FunctionDeclaration declaration = ((ProbeFunction) callee).declaration;
+                result = dispatch(interpreter, callee, arguments);
+                expr.node = new Function(expr, declaration);
+            } else {
+                result = dispatch(interpreter, callee, arguments);
+                expr.node = new Builtin(expr, (Callable) callee);
+            }
+            return result;
+        }
+    }
+
+    private static final class Function extends CallNode {
+        private final FunctionDeclaration declaration;
+
+        Function(Expr.Call expr, FunctionDeclaration declaration) {
+            super(expr);
+            this.declaration = declaration;
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object callee = interpreter.eval(expr.callee);
+            List<Object> arguments = arguments(interpreter);
+            if (callee instanceof ProbeFunction) {
+                ProbeFunction function = (ProbeFunction) callee;
+                if (function.declaration == declaration) {
+                    return function.call(interpreter, arguments);
+                }
+            }
+            return megamorphic(interpreter, callee, arguments);
+        }
+    }
+
+    private static final class Builtin extends CallNode {
+        private final Callable target;
+
+        Builtin(Expr.Call expr, Callable target) {
+            super(expr);
+            this.target = target;
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object callee = interpreter.eval(expr.callee);
+            List<Object> arguments = arguments(interpreter);
+            if (callee == target) {
+                return invoke(interpreter, target, arguments);
+            }
+            return megamorphic(interpreter, callee, arguments);
+        }
+    }
+
+    private static final class Megamorphic extends CallNode {
+        Megamorphic(Expr.Call expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object callee = interpreter.eval(expr.callee);
+            return dispatch(interpreter, callee, arguments(interpreter));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.probe;
+
+/**
+ * Base class of the JVM classes {@link JitCompiler} generates for hot function declarations. One instance is
+ * compiled per declaration and every closure created from it binds its own copy to its environment.
+ */
+public abstract class CompiledFunction implements Callable {
+    protected final Object closure;
+    protected final Object[] constants;
+
+    protected CompiledFunction(Object closure, Object[] constants) {
+        this.closure = closure;
+        this.constants = constants;
+    }
+
+    /**
+     * Returns the same code running against another closure environment.
+     */
+    public abstract CompiledFunction bind(Object closure);
+}
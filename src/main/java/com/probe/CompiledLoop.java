@@ -0,0 +1,29 @@
+package com.probe;
+
+/**
+ * Base class of the JVM classes {@link JitCompiler} generates for hot while loops. The interpreter hands a running
+ * loop over at a back edge, together with the environment the loop statement runs in.
+ */
+public abstract class CompiledLoop {
+    /**
+     * Returned when the loop finished, by its condition or a break.
+     */
+    public static final Object COMPLETED = new Object();
+    /**
+     * Returned before the first iteration when the values the loop was compiled for changed type. The
+     * interpreter then carries on with the loop itself.
+     */
+    public static final Object DEOPTIMIZED = new Object();
+
+    protected final Object[] constants;
+
+    protected CompiledLoop(Object[] constants) {
+        this.constants = constants;
+    }
+
+    /**
+     * Runs the remaining iterations. Anything but the two markers is the value of a return statement
+     * in the loop body.
+     */
+    public abstract Object run(Interpreter interpreter, Object environment);
+}
@@ -0,0 +1,358 @@
+package com.probe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.probe.vm.Chunk;
+import com.probe.vm.OpCode;
+import com.probe.vm.VmFunction;
+
+/**
+ * Compiles resolved statements to bytecode for {@link com.probe.vm.VM}. Locals keep the (depth, slot)
+ * layout chosen by the {@link Resolver}, so closures capture scopes exactly as they do in the {@link Interpreter}.
+ */
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private Chunk chunk;
+    private int scopeDepth;
+    private Loop loop;
+
+    VmFunction compile(List<Stmt> stmts) {
+        chunk = new Chunk();
+        for (Stmt stmt : stmts) {
+            compile(stmt);
+        }
+        chunk.emit(OpCode.NIL);
+        chunk.emit(OpCode.RETURN);
+        return new VmFunction(null, 0, 0, chunk);
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private VmFunction function(FunctionDeclaration declaration) {
+        Chunk enclosingChunk = chunk;
+        int enclosingDepth = scopeDepth;
+        Loop enclosingLoop = loop;
+        chunk = new Chunk();
+        scopeDepth = 0;
+        loop = null;
+        try {
+            for (Stmt stmt : declaration.body) {
+                compile(stmt);
+            }
+            chunk.emit(OpCode.NIL);
+            chunk.emit(OpCode.RETURN);
+            String name = declaration.name == null ? null : declaration.name.lexeme;
+            return new VmFunction(name, declaration.parameters.size(), declaration.slots, chunk);
+        } finally {
+            chunk = enclosingChunk;
+            scopeDepth = enclosingDepth;
+            loop = enclosingLoop;
+        }
+    }
+
+    private void define(int depth, int slot) {
+        if (depth == Resolver.GLOBAL) {
+            chunk.emit(OpCode.DEFINE_GLOBAL, slot);
+        } else {
+            chunk.emit(OpCode.DEFINE_LOCAL, slot);
+        }
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            chunk.emit(OpCode.NIL);
+        } else if (Boolean.TRUE.equals(expr.value)) {
+            chunk.emit(OpCode.TRUE);
+        } else if (Boolean.FALSE.equals(expr.value)) {
+            chunk.emit(OpCode.FALSE);
+        } else {
+            chunk.emit(OpCode.CONSTANT, chunk.addConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        switch (expr.operator.type) {
+            case PLUS:
+                chunk.emit(expr.operator, OpCode.ADD);
+                break;
+            case MINUS:
+                chunk.emit(expr.operator, OpCode.SUBTRACT);
+                break;
+            case STAR:
+                chunk.emit(expr.operator, OpCode.MULTIPLY);
+                break;
+            case SLASH:
+                chunk.emit(expr.operator, OpCode.DIVIDE);
+                break;
+            case LESS:
+                chunk.emit(expr.operator, OpCode.LESS);
+                break;
+            case LESS_EQUAL:
+                chunk.emit(expr.operator, OpCode.LESS_EQUAL);
+                break;
+            case GREATER:
+                chunk.emit(expr.operator, OpCode.GREATER);
+                break;
+            case GREATER_EQUAL:
+                chunk.emit(expr.operator, OpCode.GREATER_EQUAL);
+                break;
+            case EQUAL_EQUAL:
+                chunk.emit(OpCode.EQUAL);
+                break;
+            case BANG_EQUAL:
+                chunk.emit(OpCode.NOT_EQUAL);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        switch (expr.operator.type) {
+            case MINUS:
+                chunk.emit(OpCode.NEGATE);
+                break;
+            case BANG:
+                chunk.emit(OpCode.NOT);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth == Resolver.GLOBAL) {
+            chunk.emit(expr.name, OpCode.GET_GLOBAL, expr.slot);
+        } else {
+            chunk.emit(OpCode.GET_LOCAL, expr.depth, expr.slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        if (expr.depth == Resolver.GLOBAL) {
+            chunk.emit(expr.name, OpCode.SET_GLOBAL, expr.slot);
+        } else {
+            chunk.emit(OpCode.SET_LOCAL, expr.depth, expr.slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        int shortCircuit = chunk.emitJump(OpCode.JUMP_IF_FALSE);
+        if (expr.operator.type == TokenType.OR) {
+            chunk.emit(OpCode.TRUE);
+            int end = chunk.emitJump(OpCode.JUMP);
+            chunk.patchJump(shortCircuit);
+            compile(expr.right);
+            chunk.emit(OpCode.TRUTHY);
+            chunk.patchJump(end);
+        } else {
+            compile(expr.right);
+            chunk.emit(OpCode.TRUTHY);
+            int end = chunk.emitJump(OpCode.JUMP);
+            chunk.patchJump(shortCircuit);
+            chunk.emit(OpCode.FALSE);
+            chunk.patchJump(end);
+        }
+        // only one of the two branches pushed its value
+        chunk.adjustStack(-1);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        chunk.emit(expr.rightParen, OpCode.CALL, expr.arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr) {
+        for (Expr element : expr.elements) {
+            compile(element);
+        }
+        chunk.emit(OpCode.ARRAY, expr.elements.size());
+        return null;
+    }
+
+    @Override
+    public Void visitMapExpr(Expr.Map expr) {
+        for (int i = 0; i < expr.keys.size(); ++i) {
+            compile(expr.keys.get(i));
+            compile(expr.values.get(i));
+        }
+        chunk.emit(expr.leftBrace, OpCode.MAP, expr.keys.size());
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        compile(expr.arr);
+        compile(expr.pos);
+        chunk.emit(expr.leftSquare, OpCode.INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexAssignExpr(Expr.IndexAssign expr) {
+        compile(expr.arr);
+        compile(expr.pos);
+        compile(expr.value);
+        chunk.emit(expr.leftSquare, OpCode.SET_INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionExpr(FunctionDeclaration expr) {
+        chunk.emit(OpCode.CLOSURE, chunk.addConstant(function(expr)));
+        return null;
+    }
+
+    @Override
+    public Void visitVarStatement(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            chunk.emit(OpCode.NIL);
+        }
+        define(stmt.depth, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStatement(Stmt.Print stmt) {
+        compile(stmt.expr);
+        chunk.emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(Stmt.If stmt) {
+        compile(stmt.condition);
+        int otherwise = chunk.emitJump(OpCode.JUMP_IF_FALSE);
+        compile(stmt.then);
+        if (stmt.alternative == null) {
+            chunk.patchJump(otherwise);
+            return null;
+        }
+        int end = chunk.emitJump(OpCode.JUMP);
+        chunk.patchJump(otherwise);
+        compile(stmt.alternative);
+        chunk.patchJump(end);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(Stmt.While stmt) {
+        int start = chunk.size();
+        compile(stmt.condition);
+        int exit = chunk.emitJump(OpCode.JUMP_IF_FALSE);
+
+        Loop enclosing = loop;
+        loop = new Loop(scopeDepth);
+        compile(stmt.then);
+        // the only jump back, which the VM charges to the fuel budget
+        chunk.emit(stmt.keyword, OpCode.JUMP, start);
+        chunk.patchJump(exit);
+        for (int jump : loop.breaks) {
+            chunk.patchJump(jump);
+        }
+        loop = enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStatement(Stmt.Expression stmt) {
+        compile(stmt.expr);
+        chunk.emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(Stmt.Return stmt) {
+        if (stmt.expr instanceof Expr.Call) {
+            Expr.Call call = (Expr.Call) stmt.expr;
+            compile(call.callee);
+            for (Expr argument : call.arguments) {
+                compile(argument);
+            }
+            chunk.emit(call.rightParen, OpCode.TAIL_CALL, call.arguments.size());
+        } else if (stmt.expr != null) {
+            compile(stmt.expr);
+        } else {
+            chunk.emit(OpCode.NIL);
+        }
+        chunk.emit(OpCode.RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(Stmt.Block stmt) {
+        if (stmt.slots == 0) {
+            for (Stmt statement : stmt.statements) {
+                compile(statement);
+            }
+            return null;
+        }
+        chunk.emit(OpCode.PUSH_SCOPE, stmt.slots);
+        scopeDepth++;
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        scopeDepth--;
+        chunk.emit(OpCode.POP_SCOPE);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStatement(FunctionDeclaration stmt) {
+        chunk.emit(OpCode.CLOSURE, chunk.addConstant(function(stmt)));
+        define(stmt.depth, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        for (int i = loop.scopeDepth; i < scopeDepth; ++i) {
+            chunk.emit(OpCode.POP_SCOPE);
+        }
+        loop.breaks.add(chunk.emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    private static final class Loop {
+        final int scopeDepth;
+        final List<Integer> breaks = new ArrayList<>();
+
+        Loop(int scopeDepth) {
+            this.scopeDepth = scopeDepth;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.probe;
+
+/**
+ * How a statement finished. Break and return travel up to their loop or function as a value instead of an
+ * exception; the value of a return is parked in {@link Interpreter} until the function picks it up.
+ */
+enum Completion {
+    NORMAL, BREAK, RETURN
+}
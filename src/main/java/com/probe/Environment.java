@@ -1,50 +1,97 @@
 package com.probe;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 class Environment {
+    static final Object UNDEFINED = new Object();
+    // marks a slot whose value is held unboxed in numbers
+    static final Object NUMBER = new Object();
+
     private final Environment parent;
-    private final Map<String, Object> values;
+    private Object[] values;
+    // made on the first unboxed write, which tasks sharing the environment can race to make
+    private volatile double[] numbers;
 
-    Environment() {
-        this(null);
+    Environment(int size) {
+        this(null, size);
     }
 
-    Environment(Environment parent) {
+    Environment(Environment parent, int size) {
         this.parent = parent;
-        values = new HashMap<>();
+        values = new Object[size];
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    Object get(int slot) {
+        Object value = values[slot];
+        return value == NUMBER ? (Object) numbers[slot] : value;
     }
 
-    Object get(Token name) {
-        if (isDefined(name)) {
-            return values.get(name.lexeme);
-        }
-        if (parent != null) {
-            return parent.get(name);
+    void set(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    boolean isNumber(int slot) {
+        return values[slot] == NUMBER;
+    }
+
+    double getDouble(int slot) throws UnexpectedResultException {
+        Object value = values[slot];
+        if (value == NUMBER) {
+            return numbers[slot];
         }
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.", ErrorReporter.Mode.COVER);
+        return BinaryNode.expectDouble(value);
     }
 
+    void setDouble(int slot, double value) {
+        double[] numbers = this.numbers;
+        if (numbers == null) {
+            numbers = numbers();
+        }
+        numbers[slot] = value;
+        values[slot] = NUMBER;
+    }
 
-    void assign(Token name, Object value) {
-        if (isDefined(name)) {
-            values.put(name.lexeme, value);
-            return;
+    private synchronized double[] numbers() {
+        if (numbers == null) {
+            numbers = new double[values.length];
         }
-        if (parent != null) {
-            parent.assign(name, value);
-            return;
+        return numbers;
+    }
+
+    Object getAt(int depth, int slot) {
+        return ancestor(depth).get(slot);
+    }
+
+    void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).values[slot] = value;
+    }
+
+    double getDoubleAt(int depth, int slot) throws UnexpectedResultException {
+        return ancestor(depth).getDouble(slot);
+    }
+
+    void assignDoubleAt(int depth, int slot, double value) {
+        ancestor(depth).setDouble(slot, value);
+    }
+
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; ++i) {
+            environment = environment.parent;
         }
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.", ErrorReporter.Mode.COVER);
+        return environment;
     }
 
-    private boolean isDefined(Token name) {
-        return values.containsKey(name.lexeme);
+    // only the global environment grows, new slots stay UNDEFINED until their declaration runs
+    void grow(int size) {
+        int old = values.length;
+        if (size > old) {
+            values = Arrays.copyOf(values, size);
+            Arrays.fill(values, old, size, UNDEFINED);
+            if (numbers != null) {
+                numbers = Arrays.copyOf(numbers, size);
+            }
+        }
     }
 
 }
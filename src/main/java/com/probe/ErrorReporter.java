@@ -1,82 +1,151 @@
 package com.probe;
 
-import java.util.List;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
 
 //TODO ugly ugly code. clean up
 public class ErrorReporter {
-    private final List<String> lines;
+    private final CharSequence source;
+    // where each line starts, only worked out once there is an error to show
+    private int[] lineStarts;
+    private int lineCount;
+    private final PrintWriter err;
+    // the first error reported, for callers that hand errors on rather than show them
+    private String firstMessage;
+    private int firstLine;
+    private int firstColumn;
+
+    public ErrorReporter(CharSequence source) {
+        this(source, new PrintWriter(System.err, true));
+    }
+
+    public ErrorReporter(CharSequence source, Writer err) {
+        this.source = source;
+        this.err = err instanceof PrintWriter ? (PrintWriter) err : new PrintWriter(err, true);
+    }
 
-    public ErrorReporter(List<String> lines) {
-        this.lines = lines;
+    private String line(int number) {
+        if (lineStarts == null) {
+            lineStarts = new int[16];
+            for (int i = 0; i < source.length(); ++i) {
+                if (source.charAt(i) == '\n') {
+                    if (lineCount + 1 == lineStarts.length) {
+                        lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+                    }
+                    lineStarts[++lineCount] = i + 1;
+                }
+            }
+            lineCount++;
+        }
+        if (number > lineCount) {
+            return "";
+        }
+        int start = lineStarts[number - 1];
+        int end = number < lineCount ? lineStarts[number] - 1 : source.length();
+        return source.subSequence(start, end).toString();
     }
 
 
     public void report(Token token, String msg, Mode mode) {
-        System.err.println();
-        System.err.println();
+        report(token.line, token.column, token.lexeme.length(), msg, mode);
+    }
+
+    // reads the position straight from the stream, so the token is never built
+    void report(TokenStream tokens, int index, String msg, Mode mode) {
+        report(tokens.line(index), tokens.column(index), tokens.length(index), msg, mode);
+    }
+
+    private void report(int line, int column, int length, String msg, Mode mode) {
+        record(msg, line, column);
+        err.println();
+        err.println();
 
 
-        System.err.println("Error : " + msg);
-        int start = getStartColPos(token, mode);
-        int end = getEndColPos(token, mode);
-        String s = String.format("  %d | ", token.line);
-        print(s + lines.get(token.line - 1));
+        err.println("Error : " + msg);
+        int start = getStartColPos(column, length, mode);
+        int end = getEndColPos(column, length, mode);
+        String s = String.format("  %d | ", line);
+        print(s + line(line));
         for (int i = 0; i < s.length(); ++i) {
-            System.err.print(" ");
+            err.print(" ");
         }
 
         for (int i = 0; i < start; ++i) {
-            System.err.print(" ");
+            err.print(" ");
         }
         for (int i = start; i < end; ++i) {
-            System.err.print("^");
+            err.print("^");
         }
+        err.flush();
 
 
     }
 
-    void print(String s, Object... args) {
-        System.err.println(String.format(s, args));
+    // source lines are printed as they are, so a % in one is not taken for a format
+    void print(String s) {
+        err.println(s);
+    }
+
+    private void record(String msg, int line, int column) {
+        if (firstMessage == null) {
+            firstMessage = msg;
+            firstLine = line;
+            firstColumn = column;
+        }
+    }
+
+    String firstMessage() {
+        return firstMessage;
+    }
+
+    int firstLine() {
+        return firstLine;
+    }
+
+    int firstColumn() {
+        return firstColumn;
     }
 
-    int getStartColPos(Token token, Mode mode) {
+    int getStartColPos(int column, int length, Mode mode) {
         switch (mode) {
             case END:
-                return token.column + token.lexeme.length();
+                return column + length;
             case COVER:
-                return token.column;
+                return column;
             case FULL_LINE:
                 return 0;
             case START:
-                return token.column;
+                return column;
         }
         return 0; // unreachable
     }
 
-    int getEndColPos(Token token, Mode mode) {
+    int getEndColPos(int column, int length, Mode mode) {
         switch (mode) {
             case END:
-                return token.column + token.lexeme.length() + 1;
+                return column + length + 1;
             case COVER:
-                return token.column + token.lexeme.length();
+                return column + length;
             case FULL_LINE:
                 return 0;
             case START:
-                return token.column;
+                return column;
         }
         return 0;  // unreachable
     }
 
     public void report(String error, int line, int column) {
-        print(lines.get(line - 1));
+        record(error, line, column);
+        print(line(line));
         for (int i = 0; i < column - 1; ++i) {
-            System.err.print(" ");
+            err.print(" ");
         }
         print("^ Here");
         print(error);
     }
 
-    enum Mode {
+    public enum Mode {
         COVER, END, START, FULL_LINE
     }
 
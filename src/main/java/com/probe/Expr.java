@@ -22,8 +22,12 @@ interface Expr {
 
         T visitArrayExpr(Array expr);
 
+        T visitMapExpr(Map expr);
+
         T visitIndexExpr(Index expr);
 
+        T visitIndexAssignExpr(IndexAssign expr);
+
         T visitFunctionExpr(FunctionDeclaration expr);
     }
 
@@ -53,11 +57,14 @@ interface Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        // rewritten by whichever thread runs it first, see Interpreter.fork
+        BinaryNode node;
 
         public Binary(Expr left, Token operator, Expr right) {
             this.left = left;
             this.operator = operator;
             this.right = right;
+            this.node = BinaryNode.create(this);
         }
 
         @Override
@@ -69,10 +76,13 @@ interface Expr {
     class Unary implements Expr {
         final Token operator;
         final Expr right;
+        // rewritten by whichever thread runs it first, see Interpreter.fork
+        UnaryNode node;
 
         public Unary(Token operator, Expr right) {
             this.operator = operator;
             this.right = right;
+            this.node = UnaryNode.create(this);
         }
 
         @Override
@@ -83,6 +93,8 @@ interface Expr {
 
     class Variable implements Expr {
         final Token name;
+        int depth;
+        int slot;
 
         public Variable(Token name) {
             this.name = name;
@@ -110,6 +122,8 @@ interface Expr {
     class Assign implements Expr {
         final Token name;
         final Expr value;
+        int depth;
+        int slot;
 
         public Assign(Token name, Expr value) {
             this.name = name;
@@ -144,11 +158,14 @@ interface Expr {
         final Expr callee;
         final List<Expr> arguments;
         final Token rightParen;
+        // rewritten by whichever thread runs it first, see Interpreter.fork
+        CallNode node;
 
         public Call(Expr callee, List<Expr> arguments, Token rightParen) {
             this.callee = callee;
             this.arguments = arguments;
             this.rightParen = rightParen;
+            this.node = CallNode.create(this);
         }
 
         @Override
@@ -170,6 +187,23 @@ interface Expr {
         }
     }
 
+    class Map implements Expr {
+        final Token leftBrace;
+        final List<Expr> keys;
+        final List<Expr> values;
+
+        public Map(Token leftBrace, List<Expr> keys, List<Expr> values) {
+            this.leftBrace = leftBrace;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitMapExpr(this);
+        }
+    }
+
     class Index implements Expr {
         final Expr arr;
         final Expr pos;
@@ -186,4 +220,23 @@ interface Expr {
             return visitor.visitIndexExpr(this);
         }
     }
+
+    class IndexAssign implements Expr {
+        final Expr arr;
+        final Expr pos;
+        final Token leftSquare;
+        final Expr value;
+
+        public IndexAssign(Expr arr, Expr pos, Token leftSquare, Expr value) {
+            this.arr = arr;
+            this.pos = pos;
+            this.leftSquare = leftSquare;
+            this.value = value;
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitIndexAssignExpr(this);
+        }
+    }
 }
@@ -4,11 +4,20 @@ import java.util.List;
 
 class FunctionDeclaration implements Stmt, Expr {
 
+    // the fn, where running out of fuel is reported since anonymous functions have no name
+    final Token keyword;
     final Token name;
     final List<Token> parameters;
     final List<Stmt> body;
+    int depth;
+    int slot;
+    int slots;
+    // counted without synchronization, see Interpreter.fork
+    int invocations;
+    volatile CompiledFunction compiled;
 
-    FunctionDeclaration(Token name, List<Token> parameters, List<Stmt> body) {
+    FunctionDeclaration(Token keyword, Token name, List<Token> parameters, List<Stmt> body) {
+        this.keyword = keyword;
         this.name = name;
         this.parameters = parameters;
         this.body = body;
@@ -0,0 +1,42 @@
+package com.probe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slot table for global names. The resolver assigns every global it sees a slot
+ * so the interpreter can keep globals in an array just like locals.
+ */
+class Globals {
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = names.size();
+            slots.put(name, slot);
+            names.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * The slot of a name, or -1 when no script has used it. Unlike {@link #slot} this never adds the name, so it
+     * is safe to call while other threads read the table.
+     */
+    int find(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    String name(int slot) {
+        return names.get(slot);
+    }
+
+    int size() {
+        return names.size();
+    }
+}
@@ -1,59 +1,145 @@
 package com.probe;
 
 
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import com.probe.builtin.BuiltIns;
-import com.probe.builtin.ExecutionException;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
 
-    Environment env = new Environment();
+    private final Globals globals;
+    private Environment globalEnv;
+    Environment env;
     private final ErrorReporter reporter;
-
-    public Interpreter(ErrorReporter reporter) {
+    private Object returnValue;
+    private boolean hasErrors;
+    // where print writes, System.out when null
+    private PrintWriter out;
+    // null when the script may run for as long as it likes
+    private Budget budget;
+    // fuel left in the batch taken from the budget
+    private int ticks;
+
+    Interpreter(ErrorReporter reporter, Globals globals) {
         this.reporter = reporter;
-        for (Map.Entry<String, Callable> entry : BuiltIns.callables.entrySet()) {
-            env.define(entry.getKey(), entry.getValue());
-        }
+        this.globals = globals;
+        reset();
+    }
+
+    private Interpreter(Interpreter parent) {
+        this.reporter = parent.reporter;
+        this.globals = parent.globals;
+        this.globalEnv = parent.globalEnv;
+        this.env = globalEnv;
+        this.out = parent.out;
+        this.budget = parent.budget;
+    }
+
+    /**
+     * An interpreter sharing this one's globals, for running Probe functions on another thread. The current
+     * environment and a pending return value belong to the interpreter, so each thread needs one of its own.
+     * <p>
+     * Forks also share the tree, and what the tree learns while it runs is written without locks. Two races on it
+     * are allowed. A specializing node ({@code node} of a binary, unary or call expression) may be rewritten by
+     * two threads at once, and a thread may keep running the node it read before another one replaced it: the
+     * nodes only have final fields and every node handles any operands, so any of them gives the right result.
+     * The counters that decide when to compile ({@link FunctionDeclaration#invocations}, {@link
+     * Stmt.While#backEdges}) may lose increments or pass the threshold on two threads, which only delays a
+     * compilation or does it twice. The compiled code itself is published through volatile fields.
+     */
+    public Interpreter fork() {
+        return new Interpreter(this);
     }
 
     void interpret(List<Stmt> stmts) {
+        globalEnv.grow(globals.size());
         try {
             for (Stmt stmt : stmts) {
                 execute(stmt);
             }
         } catch (RuntimeError error) {
             reporter.report(error.token, error.getMessage(), error.mode);
+            hasErrors = true;
         }
     }
 
-
-    private String string(Object obj) {
-        if (obj == null) return "nil";
-        if (obj instanceof ProbeArray) {
-            StringBuilder builder = new StringBuilder();
-            builder.append("[");
-            ProbeArray array = (ProbeArray) obj;
-            for (int i = 0; i < array.size(); ++i) {
-                builder.append(string(array.get(i)));
-                if (i < array.size() - 1) {
-                    builder.append(", ");
-                }
+    /**
+     * Runs a script and lets its first error escape. The result is the value of the last statement when that is
+     * an expression, and nil otherwise.
+     */
+    Object run(List<Stmt> stmts) {
+        globalEnv.grow(globals.size());
+        Object result = null;
+        for (Stmt stmt : stmts) {
+            if (stmt instanceof Stmt.Expression) {
+                result = eval(((Stmt.Expression) stmt).expr);
+            } else {
+                execute(stmt);
+                result = null;
             }
-            builder.append("]");
-            return builder.toString();
         }
+        return result;
+    }
+
+    boolean isError() {
+        return hasErrors;
+    }
+
+    /**
+     * Forgets every global the scripts run so far defined, so the next script starts with only the builtins.
+     * Forked interpreters keep the globals they were forked with.
+     */
+    void reset() {
+        globalEnv = new Environment(0);
+        env = globalEnv;
+        for (Map.Entry<String, Callable> entry : BuiltIns.callables.entrySet()) {
+            int slot = globals.slot(entry.getKey());
+            globalEnv.grow(slot + 1);
+            globalEnv.set(slot, entry.getValue());
+        }
+    }
+
+    void defineGlobal(int slot, Object value) {
+        globalEnv.grow(slot + 1);
+        globalEnv.set(slot, value);
+    }
+
+    void setBudget(Budget budget) {
+        this.budget = budget;
+        ticks = 0;
+    }
+
+    /**
+     * Burns a unit of fuel and tells whether the current batch had any left. Every loop iteration and function
+     * call is charged as {@code if (!tick()) refuel(token)}, so the budget is only looked at once a batch.
+     */
+    boolean tick() {
+        return --ticks >= 0;
+    }
+
+    /**
+     * Takes the next batch of fuel, or fails at token when the fuel has run out or the deadline has passed.
+     */
+    void refuel(Token token) {
+        // the unit being charged is the first of the batch
+        ticks = budget == null ? Integer.MAX_VALUE : budget.take(token) - 1;
+    }
+
+    void setOutput(PrintWriter out) {
+        this.out = out;
+    }
 
-        String value = obj.toString();
-        if (value.endsWith(".0")) {
-            return value.substring(0, value.length() - 2);
+    void print(Object value) {
+        if (out == null) {
+            System.out.println(Values.stringify(value));
+        } else {
+            out.println(Values.stringify(value));
         }
-        return obj.toString();
     }
 
+
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
         return expr.value;
@@ -61,77 +147,43 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        Object left = eval(expr.left);
-        Object right = eval(expr.right);
-        switch (expr.operator.type) {
-            case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
-                }
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
-                }
-                throw new RuntimeError(expr.operator, "str or num", ErrorReporter.Mode.COVER);
-            case MINUS:
-                validateNumbers(expr.operator, left, right);
-                return (double) left - (double) right;
-            case STAR:
-                validateNumbers(expr.operator, left, right);
-                return (double) left * (double) right;
-            case SLASH:
-                validateNumbers(expr.operator, left, right);
-                return (double) left / (double) right;
-            case LESS:
-                validateNumbers(expr.operator, left, right);
-                return (double) left < (double) right;
-            case LESS_EQUAL:
-                validateNumbers(expr.operator, left, right);
-                return (double) left <= (double) right;
-            case GREATER:
-                validateNumbers(expr.operator, left, right);
-                return (double) left > (double) right;
-            case GREATER_EQUAL:
-                validateNumbers(expr.operator, left, right);
-                return (double) left >= (double) right;
-            case EQUAL_EQUAL:
-                return isEqual(left, right);
-            case BANG_EQUAL:
-                return !isEqual(left, right);
-        }
-        return null;
+        return expr.node.execute(this);
     }
 
-    private boolean isEqual(Object a, Object b) {
-        return (a == null && b == null) || (a != null && a.equals(b));
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        return expr.node.execute(this);
     }
 
-    private void validateNumbers(Token operator, Object left, Object right) {
-        if (!(left instanceof Double && right instanceof Double)) {
-            throw new RuntimeError(operator, "DOUBLE NO", ErrorReporter.Mode.COVER);
+    @Override
+    public Object visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth == Resolver.GLOBAL) {
+            return global(expr.slot, expr.name);
         }
+        return env.getAt(expr.depth, expr.slot);
     }
 
-    @Override
-    public Object visitUnaryExpr(Expr.Unary expr) {
-        Object value = eval(expr.right);
-        switch (expr.operator.type) {
-            case MINUS:
-                return -(double) value;
-            case BANG:
-                return !isTrue(value);
+    Environment globalEnvironment() {
+        return globalEnv;
+    }
+
+    Object global(int slot, Token name) {
+        Object value = globalEnv.get(slot);
+        if (value == Environment.UNDEFINED) {
+            throw undefined(name);
         }
-        return null;
+        return value;
     }
 
-    private boolean isTrue(Object value) {
-        if (value == null) return false;
-        if (value instanceof Boolean) return (Boolean) value;
-        return true;
+    void assignGlobal(int slot, Token name, Object value) {
+        if (globalEnv.get(slot) == Environment.UNDEFINED) {
+            throw undefined(name);
+        }
+        globalEnv.set(slot, value);
     }
 
-    @Override
-    public Object visitVariableExpr(Expr.Variable expr) {
-        return env.get(expr.name);
+    private RuntimeError undefined(Token name) {
+        return new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.", ErrorReporter.Mode.COVER);
     }
 
     @Override
@@ -142,39 +194,50 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = eval(expr.value);
-        env.assign(expr.name, value);
+        assign(expr, value);
         return value;
     }
 
+    private void assign(Expr.Assign expr, Object value) {
+        if (expr.depth == Resolver.GLOBAL) {
+            assignGlobal(expr.slot, expr.name, value);
+        } else {
+            env.assignAt(expr.depth, expr.slot, value);
+        }
+    }
+
+    // an assignment whose value is not used does not need to box a number
+    private void assignDouble(Expr.Assign expr) {
+        double value;
+        try {
+            value = evalDouble(expr.value);
+        } catch (UnexpectedResultException e) {
+            assign(expr, e.result);
+            return;
+        }
+        if (expr.depth == Resolver.GLOBAL) {
+            if (globalEnv.get(expr.slot) == Environment.UNDEFINED) {
+                throw undefined(expr.name);
+            }
+            globalEnv.setDouble(expr.slot, value);
+        } else {
+            env.assignDoubleAt(expr.depth, expr.slot, value);
+        }
+    }
+
     @Override
     public Object visitLogicalExpr(Expr.Logical expr) {
         Object left = eval(expr.left);
-        if (isTrue(left)) {
+        if (Values.isTrue(left)) {
             if (expr.operator.type == TokenType.OR) return true;
         } else if (expr.operator.type == TokenType.AND) return false;
         Object right = eval(expr.right);
-        return isTrue(right);
+        return Values.isTrue(right);
     }
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = eval(expr.callee);
-        List<Object> arguments = expr
-                .arguments
-                .stream()
-                .map(this::eval)
-                .collect(Collectors.toList());
-        Callable callable = (Callable) callee;
-        if (callable.parameters() != arguments.size()) {
-            throw new RuntimeError(expr.rightParen, "not enough arguments to call", ErrorReporter.Mode.COVER);
-        }
-        try {
-            Object result = callable.call(this, arguments);
-            return result;
-        } catch (ExecutionException e) {
-            throw new RuntimeError(expr.rightParen, e.getMessage(), ErrorReporter.Mode.COVER);
-        }
-
+        return expr.node.execute(this);
     }
 
     @Override
@@ -186,26 +249,30 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return new ProbeArray(objects);
     }
 
+    @Override
+    public Object visitMapExpr(Expr.Map expr) {
+        ProbeMap map = new ProbeMap();
+        for (int i = 0; i < expr.keys.size(); ++i) {
+            Object key = eval(expr.keys.get(i));
+            Object value = eval(expr.values.get(i));
+            Values.setIndex(map, key, value, expr.leftBrace);
+        }
+        return map;
+    }
+
     @Override
     public Object visitIndexExpr(Expr.Index expr) {
         Object arr = eval(expr.arr);
         Object pos = eval(expr.pos);
-        if (!(arr instanceof ProbeArray) && !(arr instanceof String)) {
-            throw new RuntimeError(expr.leftSquare, "expected array or string here", ErrorReporter.Mode.COVER);
-        }
-        if (arr instanceof ProbeArray) {
-            ProbeArray array = (ProbeArray) arr;
-            double val = (double) pos;
-            if (val != (int) val) {
-                throw new RuntimeError(expr.leftSquare, "index has to been an integer", ErrorReporter.Mode.COVER);
-            }
-            return array.get((int) val);
-        }
-        double val = (double) pos;
-        if (val != (int) val) {
-            throw new RuntimeError(expr.leftSquare, "index has to been an integer", ErrorReporter.Mode.END);
-        }
-        return ((String) arr).charAt((int) val);
+        return Values.index(arr, pos, expr.leftSquare);
+    }
+
+    @Override
+    public Object visitIndexAssignExpr(Expr.IndexAssign expr) {
+        Object arr = eval(expr.arr);
+        Object pos = eval(expr.pos);
+        Object value = eval(expr.value);
+        return Values.setIndex(arr, pos, value, expr.leftSquare);
     }
 
     @Override
@@ -215,94 +282,211 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 
     @Override
-    public Void visitVarStatement(Stmt.Var stmt) {
-        if (stmt.initializer != null) {
-            env.define(stmt.name.lexeme, eval(stmt.initializer));
-        } else {
-            env.define(stmt.name.lexeme, null);
+    public Completion visitVarStatement(Stmt.Var stmt) {
+        if (stmt.initializer != null && producesDouble(stmt.initializer)) {
+            try {
+                defineDouble(stmt.depth, stmt.slot, evalDouble(stmt.initializer));
+            } catch (UnexpectedResultException e) {
+                define(stmt.depth, stmt.slot, e.result);
+            }
+            return Completion.NORMAL;
         }
-        return null;
+        Object value = stmt.initializer != null ? eval(stmt.initializer) : null;
+        define(stmt.depth, stmt.slot, value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStatement(Stmt.Print stmt) {
-        System.out.println(string(eval(stmt.expr)));
-        return null;
+    public Completion visitPrintStatement(Stmt.Print stmt) {
+        print(eval(stmt.expr));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStatement(Stmt.If stmt) {
+    public Completion visitIfStatement(Stmt.If stmt) {
         Object condition = eval(stmt.condition);
-        if (isTrue(condition)) {
-            execute(stmt.then);
+        if (Values.isTrue(condition)) {
+            return execute(stmt.then);
         } else if (stmt.alternative != null) {
-            execute(stmt.alternative);
+            return execute(stmt.alternative);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStatement(Stmt.While stmt) {
-        while (isTrue(eval(stmt.condition))) {
-            try {
-                execute(stmt.then);
-            } catch (Break br) {
-                break;
+    public Completion visitWhileStatement(Stmt.While stmt) {
+        while (true) {
+            // a compiled loop takes over before the next check of the condition
+            CompiledLoop compiled = stmt.compiled;
+            if (compiled != null) {
+                Object result = compiled.run(this, env);
+                if (result == CompiledLoop.COMPLETED) {
+                    return Completion.NORMAL;
+                }
+                if (result != CompiledLoop.DEOPTIMIZED) {
+                    returnValue = result;
+                    return Completion.RETURN;
+                }
+                // compiled again later for the types it sees now
+                stmt.compiled = null;
+                stmt.backEdges = 0;
+            }
+            if (!Values.isTrue(eval(stmt.condition))) {
+                return Completion.NORMAL;
+            }
+            Completion completion = execute(stmt.then);
+            if (completion == Completion.BREAK) {
+                return Completion.NORMAL;
+            }
+            if (completion == Completion.RETURN) {
+                return completion;
+            }
+            if (!tick()) {
+                refuel(stmt.keyword);
+            }
+            if (stmt.backEdges < JitCompiler.LOOP_THRESHOLD && ++stmt.backEdges == JitCompiler.LOOP_THRESHOLD) {
+                JitCompiler.submit(stmt, this, env);
             }
         }
-        return null;
     }
 
     @Override
-    public Void visitExpressionStatement(Stmt.Expression stmt) {
+    public Completion visitExpressionStatement(Stmt.Expression stmt) {
+        if (stmt.expr instanceof Expr.Assign && producesDouble(((Expr.Assign) stmt.expr).value)) {
+            assignDouble((Expr.Assign) stmt.expr);
+            return Completion.NORMAL;
+        }
         eval(stmt.expr);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStatement(Stmt.Return stmt) {
-        if (stmt.expr != null) {
-            throw new Return(eval(stmt.expr));
+    public Completion visitReturnStatement(Stmt.Return stmt) {
+        if (stmt.expr instanceof Expr.Call) {
+            // a return is always inside a function, so this call is in tail position
+            returnValue = ((Expr.Call) stmt.expr).node.executeTail(this);
+        } else {
+            returnValue = stmt.expr != null ? eval(stmt.expr) : null;
         }
-        throw new Return();
+        return Completion.RETURN;
     }
 
-    @Override
-    public Void visitBlockStatement(Stmt.Block stmt) {
-        executeBody(stmt.statements, new Environment(env));
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
 
-        return null;
+    @Override
+    public Completion visitBlockStatement(Stmt.Block stmt) {
+        if (stmt.slots == 0) {
+            return executeAll(stmt.statements);
+        }
+        return executeBody(stmt.statements, new Environment(env, stmt.slots));
     }
 
-    void executeBody(List<Stmt> stmts, Environment environment) {
+    Completion executeBody(List<Stmt> stmts, Environment environment) {
         final Environment outer = this.env;
         try {
             this.env = environment;
-            for (Stmt stmt : stmts) {
-                execute(stmt);
-            }
+            return executeAll(stmts);
         } finally {
             this.env = outer;
         }
     }
 
+    private Completion executeAll(List<Stmt> stmts) {
+        for (int i = 0; i < stmts.size(); ++i) {
+            Completion completion = execute(stmts.get(i));
+            if (completion != Completion.NORMAL) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
+
     @Override
-    public Void visitFunctionStatement(FunctionDeclaration stmt) {
-        this.env.define(stmt.name.lexeme, new ProbeFunction(stmt, env));
-        return null;
+    public Completion visitFunctionStatement(FunctionDeclaration stmt) {
+        define(stmt.depth, stmt.slot, new ProbeFunction(stmt, env));
+        return Completion.NORMAL;
+    }
+
+    private void define(int depth, int slot, Object value) {
+        if (depth == Resolver.GLOBAL) {
+            globalEnv.set(slot, value);
+        } else {
+            env.set(slot, value);
+        }
+    }
+
+    private void defineDouble(int depth, int slot, double value) {
+        if (depth == Resolver.GLOBAL) {
+            globalEnv.setDouble(slot, value);
+        } else {
+            env.setDouble(slot, value);
+        }
     }
 
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt) {
-        throw new Break();
+    public Completion visitBreakStmt(Stmt.Break stmt) {
+        return Completion.BREAK;
     }
 
-    private Object eval(Expr expr) {
+    Object eval(Expr expr) {
         return expr.accept(this);
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    /**
+     * Evaluates an expression that is expected to be a number without boxing it.
+     */
+    double evalDouble(Expr expr) throws UnexpectedResultException {
+        if (expr instanceof Expr.Binary) {
+            return ((Expr.Binary) expr).node.executeDouble(this);
+        }
+        if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) expr;
+            if (variable.depth != Resolver.GLOBAL) {
+                return env.getDoubleAt(variable.depth, variable.slot);
+            }
+            if (globalEnv.isNumber(variable.slot)) {
+                return globalEnv.getDouble(variable.slot);
+            }
+        } else if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).node.executeDouble(this);
+        } else if (expr instanceof Expr.Grouping) {
+            return evalDouble(((Expr.Grouping) expr).expr);
+        } else if (expr instanceof Expr.Index) {
+            return indexDouble((Expr.Index) expr);
+        }
+        return BinaryNode.expectDouble(eval(expr));
+    }
+
+    // reads an element of a numeric array without boxing it
+    private double indexDouble(Expr.Index expr) throws UnexpectedResultException {
+        Object arr = eval(expr.arr);
+        Object pos = eval(expr.pos);
+        if (arr instanceof ProbeArray && ((ProbeArray) arr).isNumeric() && pos instanceof Double) {
+            ProbeArray array = (ProbeArray) arr;
+            double val = (double) pos;
+            if (val == (int) val && val >= 0 && val < array.size()) {
+                return array.getDouble((int) val);
+            }
+        }
+        return BinaryNode.expectDouble(Values.index(arr, pos, expr.leftSquare));
+    }
+
+    private static boolean producesDouble(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            return ((Expr.Binary) expr).node.producesDouble();
+        }
+        if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).node.producesDouble();
+        }
+        return expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Double;
+    }
+
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
     }
 
 
@@ -0,0 +1,1017 @@
+package com.probe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.probe.jit.ClassFile;
+import com.probe.jit.Code;
+import com.probe.jit.Label;
+
+/**
+ * Compiles hot function declarations and hot loops to JVM classes. A body is translated straight to bytecode on a
+ * background thread, defined by a class loader of its own and picked up by {@link ProbeFunction} or the
+ * {@link Interpreter} once it is ready. Locals become JVM locals, and the ones that only ever hold numbers are
+ * unboxed doubles; everything that is not plain arithmetic calls {@link JitSupport}. Code that creates closures
+ * keeps running in the interpreter.
+ * <p>
+ * A loop is compiled while it runs and entered at its next back edge. When its body makes no calls, the variables
+ * it uses from outside are loaded into JVM locals on entry and written back on the way out; a number that is no
+ * longer a number by then sends the loop back to the interpreter.
+ */
+final class JitCompiler implements Expr.Visitor<JitCompiler.Type>, Stmt.Visitor<Void> {
+    /**
+     * Calls of a declaration before it is compiled, {@code -Dprobe.jit.threshold=0} turns compilation off.
+     */
+    static final int THRESHOLD = Integer.getInteger("probe.jit.threshold", 1000);
+    /**
+     * Back edges of a loop before it is compiled, {@code -Dprobe.jit.loopThreshold=0} turns loop compilation off.
+     */
+    static final int LOOP_THRESHOLD = Integer.getInteger("probe.jit.loopThreshold", 10000);
+    private static final boolean TRACE = Boolean.getBoolean("probe.jit.trace");
+    /**
+     * Compiles on the thread that found the code hot, so it runs compiled from the very next call or back edge.
+     * Meant for tests, which otherwise could not tell when the compiled code takes over.
+     */
+    private static final boolean SYNCHRONOUS = Boolean.getBoolean("probe.jit.synchronous");
+
+    private static final String COMPILED = "com/probe/CompiledFunction";
+    private static final String LOOP = "com/probe/CompiledLoop";
+    private static final String SUPPORT = "com/probe/JitSupport";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String TOKEN = "Lcom/probe/Token;";
+    private static final String INTERPRETER = "Lcom/probe/Interpreter;";
+    private static final String CONSTRUCTOR = "(" + OBJECT + "[" + OBJECT + ")V";
+    // call keeps this, the interpreter and the argument list in its first slots, run the environment instead
+    private static final int INTERPRETER_SLOT = 1;
+    private static final int ARGUMENTS_SLOT = 2;
+    private static final int ENVIRONMENT_SLOT = 2;
+
+    private static final AtomicInteger classes = new AtomicInteger();
+    private static final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "probe-jit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    enum Type {
+        DOUBLE, BOOLEAN, OBJECT
+    }
+
+    private static final class Local {
+        final String name;
+        final int index;
+        final Type type;
+
+        Local(String name, int index, Type type) {
+            this.name = name;
+            this.index = index;
+            this.type = type;
+        }
+    }
+
+    private static final class Unsupported extends RuntimeException {
+        Unsupported(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    // a variable from outside a compiled loop, relative to the environment the loop runs in
+    private static final class Outer {
+        final int depth;
+        final int slot;
+        final boolean cached;
+
+        Outer(int depth, int slot, boolean cached) {
+            this.depth = depth;
+            this.slot = slot;
+            this.cached = cached;
+        }
+    }
+
+    // exactly one of declaration and loop is set
+    private final FunctionDeclaration declaration;
+    private final Stmt.While loop;
+    private final Interpreter interpreter;
+    private final Environment environment;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Token, Integer> tokens = new IdentityHashMap<>();
+    private final Set<String> boxed = new HashSet<>();
+    private final Map<String, Local> locals = new LinkedHashMap<>();
+    private final Map<String, Outer> outers = new HashMap<>();
+    private final List<Integer> scopes = new ArrayList<>();
+    private final List<Label> loops = new ArrayList<>();
+    private Code code;
+    private int nextLocal;
+    private int nextScope;
+    private boolean changed;
+    // a loop without calls is the only code that can see its outer variables, so it keeps them in locals
+    private boolean caching;
+
+    private JitCompiler(FunctionDeclaration declaration, Stmt.While loop, Interpreter interpreter,
+                        Environment environment) {
+        this.declaration = declaration;
+        this.loop = loop;
+        this.interpreter = interpreter;
+        this.environment = environment;
+        this.caching = loop != null;
+    }
+
+    static void submit(FunctionDeclaration declaration) {
+        if (SYNCHRONOUS) {
+            compile(declaration);
+        } else {
+            background.execute(() -> compile(declaration));
+        }
+    }
+
+    /**
+     * Compiles a loop that is still running, speculating that the variables it finds in {@code environment}
+     * keep the types they have now.
+     */
+    static void submit(Stmt.While loop, Interpreter interpreter, Environment environment) {
+        if (SYNCHRONOUS) {
+            compile(loop, interpreter, environment);
+        } else {
+            background.execute(() -> compile(loop, interpreter, environment));
+        }
+    }
+
+    private static void compile(FunctionDeclaration declaration) {
+        String className = "com/probe/jit/Compiled" + classes.incrementAndGet();
+        String name = declaration.name == null ? "fn" : declaration.name.lexeme;
+        JitCompiler generator = new JitCompiler(declaration, null, null, null);
+        try {
+            Class<?> type = define(className, generator.generateFunction(className));
+            declaration.compiled = (CompiledFunction) type.getConstructor(Object.class, Object[].class)
+                    .newInstance(null, generator.constants.toArray());
+            trace(name + " compiled to " + className);
+        } catch (Unsupported e) {
+            trace(name + " stays interpreted, it " + e.getMessage());
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            trace(name + " failed to compile: " + e);
+        }
+    }
+
+    private static void compile(Stmt.While loop, Interpreter interpreter, Environment environment) {
+        String className = "com/probe/jit/Loop" + classes.incrementAndGet();
+        JitCompiler generator = new JitCompiler(null, loop, interpreter, environment);
+        try {
+            Class<?> type = define(className, generator.generateLoop(className));
+            loop.compiled = (CompiledLoop) type.getConstructor(Object[].class)
+                    .newInstance((Object) generator.constants.toArray());
+            trace("loop compiled to " + className + (generator.caching ? ", outer variables in locals" : ""));
+        } catch (Unsupported e) {
+            trace("loop stays interpreted, it " + e.getMessage());
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            trace("loop failed to compile: " + e);
+        }
+    }
+
+    private static Class<?> define(String className, byte[] bytes) {
+        return new JitClassLoader(JitCompiler.class.getClassLoader()).define(className.replace('/', '.'), bytes);
+    }
+
+    private static void trace(String message) {
+        if (TRACE) {
+            System.err.println("[jit] " + message);
+        }
+    }
+
+    // every local starts out as a double and is boxed for good once something else is stored in it,
+    // so the body is generated again until no local changes type
+    private byte[] generateFunction(String className) {
+        List<Token> parameters = declaration.parameters;
+        for (int i = 0; i < parameters.size(); ++i) {
+            boxed.add(local(0, i));
+        }
+        Set<String> declared = new HashSet<>();
+        ClassFile file;
+        do {
+            file = new ClassFile(className, COMPILED);
+            constructor(file);
+            bind(file);
+            parameters(file, parameters.size());
+            code = file.method(ClassFile.ACC_PUBLIC, "call", "(" + INTERPRETER + "Ljava/util/List;)" + OBJECT);
+            reset();
+            scopes.add(nextScope++);
+            for (int i = 0; i < parameters.size(); ++i) {
+                Local local = allocate(local(0, i));
+                code.local(Code.ALOAD, ARGUMENTS_SLOT);
+                code.push(i);
+                code.invoke(Code.INVOKEINTERFACE, "java/util/List", "get", "(I)" + OBJECT);
+                code.local(Code.ASTORE, local.index);
+            }
+            initialize(declared, null);
+            statements(declaration.body);
+            code.op(Code.ACONST_NULL);
+            code.op(Code.ARETURN);
+            declared = settle(declared);
+        } while (changed);
+        return file.toByteArray();
+    }
+
+    private byte[] generateLoop(String className) {
+        Set<String> declared = new HashSet<>();
+        ClassFile file;
+        do {
+            file = new ClassFile(className, LOOP);
+            Code init = file.method(ClassFile.ACC_PUBLIC, "<init>", "([" + OBJECT + ")V");
+            init.local(Code.ALOAD, 0);
+            init.local(Code.ALOAD, 1);
+            init.invoke(Code.INVOKESPECIAL, LOOP, "<init>", "([" + OBJECT + ")V");
+            init.op(Code.RETURN);
+            code = file.method(ClassFile.ACC_PUBLIC, "run", "(" + INTERPRETER + OBJECT + ")" + OBJECT);
+            reset();
+            Label deoptimize = new Label();
+            initialize(declared, deoptimize);
+            Label start = new Label();
+            Label end = new Label();
+            code.mark(start);
+            loop.accept(this);
+            code.mark(end);
+            writeBack();
+            code.field(Code.GETSTATIC, LOOP, "COMPLETED", OBJECT);
+            code.op(Code.ARETURN);
+            if (caching) {
+                // an error leaves the variables as far as the loop got, as it does in the interpreter
+                Label handler = new Label();
+                code.catchAll(start, end, handler);
+                code.mark(handler);
+                int exception = nextLocal++;
+                code.locals(nextLocal);
+                code.local(Code.ASTORE, exception);
+                writeBack();
+                code.local(Code.ALOAD, exception);
+                code.op(Code.ATHROW);
+            }
+            code.mark(deoptimize);
+            code.field(Code.GETSTATIC, LOOP, "DEOPTIMIZED", OBJECT);
+            code.op(Code.ARETURN);
+            declared = settle(declared);
+        } while (changed);
+        return file.toByteArray();
+    }
+
+    private void reset() {
+        changed = false;
+        nextLocal = ARGUMENTS_SLOT + 1;
+        code.locals(nextLocal);
+        locals.clear();
+        constants.clear();
+        tokens.clear();
+        scopes.clear();
+        loops.clear();
+        nextScope = 0;
+    }
+
+    // the locals found by the previous pass are set up front, so every read verifies
+    private void initialize(Set<String> declared, Label deoptimize) {
+        for (String name : declared) {
+            if (locals.containsKey(name)) {
+                continue;
+            }
+            Outer outer = outers.get(name);
+            if (outer == null) {
+                initialize(allocate(name));
+            } else if (caching) {
+                load(allocate(name), outer, deoptimize);
+            }
+        }
+    }
+
+    // another pass is needed when this one found locals the previous one did not set up
+    private Set<String> settle(Set<String> declared) {
+        if (!declared.equals(locals.keySet())) {
+            changed = true;
+            return new HashSet<>(locals.keySet());
+        }
+        return declared;
+    }
+
+    private static void constructor(ClassFile file) {
+        Code init = file.method(ClassFile.ACC_PUBLIC, "<init>", CONSTRUCTOR);
+        init.local(Code.ALOAD, 0);
+        init.local(Code.ALOAD, 1);
+        init.local(Code.ALOAD, 2);
+        init.invoke(Code.INVOKESPECIAL, COMPILED, "<init>", CONSTRUCTOR);
+        init.op(Code.RETURN);
+    }
+
+    private static void bind(ClassFile file) {
+        Code bind = file.method(ClassFile.ACC_PUBLIC, "bind", "(" + OBJECT + ")L" + COMPILED + ";");
+        bind.type(Code.NEW, file.name());
+        bind.op(Code.DUP);
+        bind.local(Code.ALOAD, 1);
+        bind.local(Code.ALOAD, 0);
+        bind.field(Code.GETFIELD, COMPILED, "constants", "[" + OBJECT);
+        bind.invoke(Code.INVOKESPECIAL, file.name(), "<init>", CONSTRUCTOR);
+        bind.op(Code.ARETURN);
+    }
+
+    private static void parameters(ClassFile file, int count) {
+        Code parameters = file.method(ClassFile.ACC_PUBLIC, "parameters", "()I");
+        parameters.push(count);
+        parameters.op(Code.IRETURN);
+    }
+
+    private static String local(int scope, int slot) {
+        return scope + ":" + slot;
+    }
+
+    private Local allocate(String name) {
+        Local local = new Local(name, nextLocal, boxed.contains(name) ? Type.OBJECT : Type.DOUBLE);
+        nextLocal += local.type == Type.DOUBLE ? 2 : 1;
+        code.locals(nextLocal);
+        locals.put(name, local);
+        return local;
+    }
+
+    private void initialize(Local local) {
+        if (local.type == Type.DOUBLE) {
+            code.push(0.0);
+            code.local(Code.DSTORE, local.index);
+        } else {
+            code.op(Code.ACONST_NULL);
+            code.local(Code.ASTORE, local.index);
+        }
+    }
+
+    private Local declare(int slot) {
+        String name = local(scopes.get(scopes.size() - 1), slot);
+        Local local = locals.get(name);
+        return local != null ? local : allocate(name);
+    }
+
+    // the JVM local holding a variable, or null when it lives in an environment
+    private Local variable(int depth, int slot) {
+        if (isLocal(depth)) {
+            return resolve(depth, slot);
+        }
+        if (!caching) {
+            return null;
+        }
+        int outerDepth = depth == Resolver.GLOBAL ? depth : depth - scopes.size();
+        String name = outerDepth == Resolver.GLOBAL ? "g" + slot : "o" + outerDepth + ":" + slot;
+        Outer outer = outers.get(name);
+        if (outer == null) {
+            Object value = outerDepth == Resolver.GLOBAL
+                    ? interpreter.globalEnvironment().get(slot) : environment.getAt(outerDepth, slot);
+            // an undefined global has to keep failing the way the interpreter fails
+            outer = new Outer(outerDepth, slot, value != Environment.UNDEFINED);
+            outers.put(name, outer);
+            if (!(value instanceof Double)) {
+                boxed.add(name);
+            }
+        }
+        if (!outer.cached) {
+            return null;
+        }
+        Local local = locals.get(name);
+        // one found in this pass is loaded by the next one
+        return local != null ? local : allocate(name);
+    }
+
+    private void load(Local local, Outer outer, Label deoptimize) {
+        boolean global = outer.depth == Resolver.GLOBAL;
+        code.local(Code.ALOAD, global ? INTERPRETER_SLOT : ENVIRONMENT_SLOT);
+        if (!global) {
+            code.push(outer.depth);
+        }
+        code.push(outer.slot);
+        if (local.type == Type.DOUBLE) {
+            support(global ? "isGlobalNumber" : "isNumber", global ? "(" + INTERPRETER + "I)Z" : "(" + OBJECT + "II)Z");
+        } else if (global) {
+            support("isDefined", "(" + INTERPRETER + "I)Z");
+        }
+        if (local.type == Type.DOUBLE || global) {
+            code.jump(Code.IFEQ, deoptimize);
+            code.local(Code.ALOAD, global ? INTERPRETER_SLOT : ENVIRONMENT_SLOT);
+            if (!global) {
+                code.push(outer.depth);
+            }
+            code.push(outer.slot);
+        }
+        if (local.type == Type.DOUBLE) {
+            support(global ? "globalDouble" : "getDouble", global ? "(" + INTERPRETER + "I)D" : "(" + OBJECT + "II)D");
+            code.local(Code.DSTORE, local.index);
+        } else {
+            support(global ? "loadGlobal" : "get", global ? "(" + INTERPRETER + "I)" + OBJECT : "(" + OBJECT + "II)" + OBJECT);
+            code.local(Code.ASTORE, local.index);
+        }
+    }
+
+    // stores the outer variables kept in locals back where the interpreter looks for them
+    private void writeBack() {
+        for (Local local : locals.values()) {
+            Outer outer = outers.get(local.name);
+            if (outer == null) {
+                continue;
+            }
+            boolean global = outer.depth == Resolver.GLOBAL;
+            code.local(Code.ALOAD, global ? INTERPRETER_SLOT : ENVIRONMENT_SLOT);
+            if (!global) {
+                code.push(outer.depth);
+            }
+            code.push(outer.slot);
+            if (local.type == Type.DOUBLE) {
+                code.local(Code.DLOAD, local.index);
+                support(global ? "storeGlobalDouble" : "assignDouble",
+                        global ? "(" + INTERPRETER + "ID)V" : "(" + OBJECT + "IID)V");
+            } else {
+                code.local(Code.ALOAD, local.index);
+                support(global ? "storeGlobal" : "assign",
+                        global ? "(" + INTERPRETER + "I" + OBJECT + ")V" : "(" + OBJECT + "II" + OBJECT + ")" + OBJECT);
+                if (!global) {
+                    code.op(Code.POP);
+                }
+            }
+        }
+    }
+
+    private boolean isLocal(int depth) {
+        return depth != Resolver.GLOBAL && depth < scopes.size();
+    }
+
+    private Local resolve(int depth, int slot) {
+        Local local = locals.get(local(scopes.get(scopes.size() - 1 - depth), slot));
+        if (local == null) {
+            throw new Unsupported("reads a local before declaring it");
+        }
+        return local;
+    }
+
+    // stores the value on top of the stack
+    private void store(Local local, Type type) {
+        if (local.type == Type.OBJECT) {
+            box(type);
+            code.local(Code.ASTORE, local.index);
+        } else if (type == Type.DOUBLE) {
+            code.local(Code.DSTORE, local.index);
+        } else {
+            // this pass is thrown away and the local is an object in the next one
+            boxed.add(local.name);
+            changed = true;
+            discard(type);
+        }
+    }
+
+    private void box(Type type) {
+        if (type == Type.DOUBLE) {
+            code.invoke(Code.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+        } else if (type == Type.BOOLEAN) {
+            code.invoke(Code.INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+        }
+    }
+
+    private void discard(Type type) {
+        code.op(type == Type.DOUBLE ? Code.POP2 : Code.POP);
+    }
+
+    // replaces the value on top of the stack with its truthiness as an int
+    private void test(Type type) {
+        if (type == Type.DOUBLE) {
+            code.op(Code.POP2);
+            code.push(1);
+        } else if (type == Type.OBJECT) {
+            support("isTrue", "(" + OBJECT + ")Z");
+        }
+    }
+
+    private void object(Expr expr) {
+        box(generate(expr));
+    }
+
+    private void token(Token token) {
+        Integer index = tokens.get(token);
+        if (index == null) {
+            constants.add(token);
+            index = constants.size() - 1;
+            tokens.put(token, index);
+        }
+        code.local(Code.ALOAD, 0);
+        code.field(Code.GETFIELD, loop == null ? COMPILED : LOOP, "constants", "[" + OBJECT);
+        code.push(index);
+        code.op(Code.AALOAD);
+        code.type(Code.CHECKCAST, "com/probe/Token");
+    }
+
+    private void closure(int depth, int slot) {
+        if (loop == null) {
+            code.local(Code.ALOAD, 0);
+            code.field(Code.GETFIELD, COMPILED, "closure", OBJECT);
+        } else {
+            code.local(Code.ALOAD, ENVIRONMENT_SLOT);
+        }
+        code.push(depth - scopes.size());
+        code.push(slot);
+    }
+
+    private void support(String name, String descriptor) {
+        code.invoke(Code.INVOKESTATIC, SUPPORT, name, descriptor);
+    }
+
+    // pushes 1 when the jump is taken and 0 otherwise
+    private void bool(int jump) {
+        Label yes = new Label();
+        Label end = new Label();
+        code.jump(jump, yes);
+        code.push(0);
+        code.jump(Code.GOTO, end);
+        code.mark(yes);
+        code.push(1);
+        code.mark(end);
+    }
+
+    private void array(List<Expr> elements) {
+        code.push(elements.size());
+        code.type(Code.ANEWARRAY, "java/lang/Object");
+        for (int i = 0; i < elements.size(); ++i) {
+            code.op(Code.DUP);
+            code.push(i);
+            object(elements.get(i));
+            code.op(Code.AASTORE);
+        }
+    }
+
+    private Type generate(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void statements(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            stmt.accept(this);
+            if (!completesNormally(stmt)) {
+                return;
+            }
+        }
+    }
+
+    private static boolean completesNormally(Stmt stmt) {
+        if (stmt instanceof Stmt.Return || stmt instanceof Stmt.Break) {
+            return false;
+        }
+        if (stmt instanceof Stmt.Block) {
+            for (Stmt statement : ((Stmt.Block) stmt).statements) {
+                if (!completesNormally(statement)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (stmt instanceof Stmt.If) {
+            Stmt.If ifStmt = (Stmt.If) stmt;
+            return ifStmt.alternative == null || completesNormally(ifStmt.then) || completesNormally(ifStmt.alternative);
+        }
+        return true;
+    }
+
+    /**
+     * The type {@link #generate} leaves on the stack for an expression, decided before any of it is emitted.
+     */
+    private Type typeOf(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) expr).value;
+            if (value instanceof Double) return Type.DOUBLE;
+            if (value instanceof Boolean) return Type.BOOLEAN;
+            return Type.OBJECT;
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case PLUS:
+                    return typeOf(binary.left) == Type.DOUBLE && typeOf(binary.right) == Type.DOUBLE
+                            ? Type.DOUBLE : Type.OBJECT;
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    return Type.DOUBLE;
+                default:
+                    return Type.BOOLEAN;
+            }
+        }
+        if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).operator.type == TokenType.MINUS ? Type.DOUBLE : Type.BOOLEAN;
+        }
+        if (expr instanceof Expr.Grouping) {
+            return typeOf(((Expr.Grouping) expr).expr);
+        }
+        if (expr instanceof Expr.Logical) {
+            return Type.BOOLEAN;
+        }
+        if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) expr;
+            Local local = variable(variable.depth, variable.slot);
+            return local != null ? local.type : Type.OBJECT;
+        }
+        if (expr instanceof Expr.Assign) {
+            Expr.Assign assign = (Expr.Assign) expr;
+            Local local = variable(assign.depth, assign.slot);
+            return local != null ? local.type : Type.OBJECT;
+        }
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        if (value == null) {
+            code.op(Code.ACONST_NULL);
+            return Type.OBJECT;
+        }
+        if (value instanceof Boolean) {
+            code.push((Boolean) value ? 1 : 0);
+            return Type.BOOLEAN;
+        }
+        if (value instanceof Double) {
+            code.push((double) value);
+            return Type.DOUBLE;
+        }
+        if (value instanceof String) {
+            code.push((String) value);
+            return Type.OBJECT;
+        }
+        throw new Unsupported("uses the literal " + value);
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        TokenType operator = expr.operator.type;
+        if (operator == TokenType.EQUAL_EQUAL || operator == TokenType.BANG_EQUAL) {
+            equality(expr);
+            if (operator == TokenType.BANG_EQUAL) {
+                code.push(1);
+                code.op(Code.IXOR);
+            }
+            return Type.BOOLEAN;
+        }
+        if (typeOf(expr.left) == Type.DOUBLE && typeOf(expr.right) == Type.DOUBLE) {
+            generate(expr.left);
+            generate(expr.right);
+            switch (operator) {
+                case PLUS:
+                    code.op(Code.DADD);
+                    return Type.DOUBLE;
+                case MINUS:
+                    code.op(Code.DSUB);
+                    return Type.DOUBLE;
+                case STAR:
+                    code.op(Code.DMUL);
+                    return Type.DOUBLE;
+                case SLASH:
+                    code.op(Code.DDIV);
+                    return Type.DOUBLE;
+                // a comparison with NaN is false, which dcmpg and dcmpl give by picking the failing side
+                case LESS:
+                    code.op(Code.DCMPG);
+                    bool(Code.IFLT);
+                    return Type.BOOLEAN;
+                case LESS_EQUAL:
+                    code.op(Code.DCMPG);
+                    bool(Code.IFLE);
+                    return Type.BOOLEAN;
+                case GREATER:
+                    code.op(Code.DCMPL);
+                    bool(Code.IFGT);
+                    return Type.BOOLEAN;
+                case GREATER_EQUAL:
+                    code.op(Code.DCMPL);
+                    bool(Code.IFGE);
+                    return Type.BOOLEAN;
+            }
+            throw new Unsupported("uses the operator " + expr.operator.lexeme);
+        }
+        object(expr.left);
+        object(expr.right);
+        token(expr.operator);
+        String operands = "(" + OBJECT + OBJECT + TOKEN + ")";
+        switch (operator) {
+            case PLUS:
+                support("add", operands + OBJECT);
+                return Type.OBJECT;
+            case MINUS:
+                support("subtract", operands + "D");
+                return Type.DOUBLE;
+            case STAR:
+                support("multiply", operands + "D");
+                return Type.DOUBLE;
+            case SLASH:
+                support("divide", operands + "D");
+                return Type.DOUBLE;
+            case LESS:
+                support("less", operands + "Z");
+                return Type.BOOLEAN;
+            case LESS_EQUAL:
+                support("lessEqual", operands + "Z");
+                return Type.BOOLEAN;
+            case GREATER:
+                support("greater", operands + "Z");
+                return Type.BOOLEAN;
+            case GREATER_EQUAL:
+                support("greaterEqual", operands + "Z");
+                return Type.BOOLEAN;
+        }
+        throw new Unsupported("uses the operator " + expr.operator.lexeme);
+    }
+
+    private void equality(Expr.Binary expr) {
+        Type left = typeOf(expr.left);
+        Type right = typeOf(expr.right);
+        if (left == Type.DOUBLE && right == Type.DOUBLE) {
+            generate(expr.left);
+            generate(expr.right);
+            support("numbersEqual", "(DD)Z");
+        } else if (left == Type.BOOLEAN && right == Type.BOOLEAN) {
+            generate(expr.left);
+            generate(expr.right);
+            bool(Code.IF_ICMPEQ);
+        } else {
+            object(expr.left);
+            object(expr.right);
+            code.invoke(Code.INVOKESTATIC, "com/probe/Values", "isEqual", "(" + OBJECT + OBJECT + ")Z");
+        }
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.MINUS) {
+            Type type = generate(expr.right);
+            if (type == Type.DOUBLE) {
+                code.op(Code.DNEG);
+            } else {
+                box(type);
+                support("negate", "(" + OBJECT + ")D");
+            }
+            return Type.DOUBLE;
+        }
+        test(generate(expr.right));
+        code.push(1);
+        code.op(Code.IXOR);
+        return Type.BOOLEAN;
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        Local local = variable(expr.depth, expr.slot);
+        if (local != null) {
+            code.local(local.type == Type.DOUBLE ? Code.DLOAD : Code.ALOAD, local.index);
+            return local.type;
+        }
+        if (expr.depth == Resolver.GLOBAL) {
+            code.local(Code.ALOAD, INTERPRETER_SLOT);
+            code.push(expr.slot);
+            token(expr.name);
+            support("global", "(" + INTERPRETER + "I" + TOKEN + ")" + OBJECT);
+            return Type.OBJECT;
+        }
+        closure(expr.depth, expr.slot);
+        support("get", "(" + OBJECT + "II)" + OBJECT);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return generate(expr.expr);
+    }
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) {
+        Local local = variable(expr.depth, expr.slot);
+        if (local == null) {
+            return assignOuter(expr);
+        }
+        Type type = generate(expr.value);
+        if (local.type == Type.OBJECT) {
+            box(type);
+        }
+        code.op(local.type == Type.DOUBLE && type == Type.DOUBLE ? Code.DUP2 : Code.DUP);
+        store(local, local.type == Type.OBJECT ? Type.OBJECT : type);
+        return local.type;
+    }
+
+    private Type assignOuter(Expr.Assign expr) {
+        if (expr.depth == Resolver.GLOBAL) {
+            code.local(Code.ALOAD, INTERPRETER_SLOT);
+            code.push(expr.slot);
+            token(expr.name);
+            object(expr.value);
+            support("assignGlobal", "(" + INTERPRETER + "I" + TOKEN + OBJECT + ")" + OBJECT);
+        } else {
+            closure(expr.depth, expr.slot);
+            object(expr.value);
+            support("assign", "(" + OBJECT + "II" + OBJECT + ")" + OBJECT);
+        }
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        Label right = new Label();
+        Label end = new Label();
+        test(generate(expr.left));
+        boolean or = expr.operator.type == TokenType.OR;
+        code.jump(or ? Code.IFEQ : Code.IFNE, right);
+        code.push(or ? 1 : 0);
+        code.jump(Code.GOTO, end);
+        code.mark(right);
+        test(generate(expr.right));
+        code.mark(end);
+        return Type.BOOLEAN;
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) {
+        call(expr, "call");
+        return Type.OBJECT;
+    }
+
+    // a call through the named JitSupport method, which takes the same arguments as JitSupport.call
+    private void call(Expr.Call expr, String method) {
+        if (caching) {
+            // the callee could read or write the outer variables, so this pass is thrown away
+            caching = false;
+            changed = true;
+        }
+        code.local(Code.ALOAD, INTERPRETER_SLOT);
+        object(expr.callee);
+        token(expr.rightParen);
+        array(expr.arguments);
+        support(method, "(" + INTERPRETER + OBJECT + TOKEN + "[" + OBJECT + ")" + OBJECT);
+    }
+
+    @Override
+    public Type visitArrayExpr(Expr.Array expr) {
+        array(expr.elements);
+        support("array", "([" + OBJECT + ")" + OBJECT);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitMapExpr(Expr.Map expr) {
+        List<Expr> entries = new ArrayList<>();
+        for (int i = 0; i < expr.keys.size(); ++i) {
+            entries.add(expr.keys.get(i));
+            entries.add(expr.values.get(i));
+        }
+        array(entries);
+        token(expr.leftBrace);
+        support("map", "([" + OBJECT + TOKEN + ")" + OBJECT);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitIndexExpr(Expr.Index expr) {
+        object(expr.arr);
+        object(expr.pos);
+        token(expr.leftSquare);
+        support("index", "(" + OBJECT + OBJECT + TOKEN + ")" + OBJECT);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitIndexAssignExpr(Expr.IndexAssign expr) {
+        object(expr.arr);
+        object(expr.pos);
+        object(expr.value);
+        token(expr.leftSquare);
+        support("setIndex", "(" + OBJECT + OBJECT + OBJECT + TOKEN + ")" + OBJECT);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitFunctionExpr(FunctionDeclaration expr) {
+        throw new Unsupported("creates a closure");
+    }
+
+    @Override
+    public Void visitVarStatement(Stmt.Var stmt) {
+        Type type;
+        if (stmt.initializer != null) {
+            type = generate(stmt.initializer);
+        } else {
+            code.op(Code.ACONST_NULL);
+            type = Type.OBJECT;
+        }
+        store(declare(stmt.slot), type);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStatement(Stmt.Print stmt) {
+        code.local(Code.ALOAD, INTERPRETER_SLOT);
+        object(stmt.expr);
+        support("print", "(" + INTERPRETER + OBJECT + ")V");
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(Stmt.If stmt) {
+        Label otherwise = new Label();
+        test(generate(stmt.condition));
+        code.jump(Code.IFEQ, otherwise);
+        stmt.then.accept(this);
+        if (stmt.alternative == null) {
+            code.mark(otherwise);
+            return null;
+        }
+        Label end = new Label();
+        code.jump(Code.GOTO, end);
+        code.mark(otherwise);
+        stmt.alternative.accept(this);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(Stmt.While stmt) {
+        Label start = new Label();
+        Label end = new Label();
+        code.mark(start);
+        test(generate(stmt.condition));
+        code.jump(Code.IFEQ, end);
+        loops.add(end);
+        stmt.then.accept(this);
+        loops.remove(loops.size() - 1);
+        Label fueled = new Label();
+        code.local(Code.ALOAD, INTERPRETER_SLOT);
+        support("tick", "(" + INTERPRETER + ")Z");
+        code.jump(Code.IFNE, fueled);
+        code.local(Code.ALOAD, INTERPRETER_SLOT);
+        token(stmt.keyword);
+        support("refuel", "(" + INTERPRETER + TOKEN + ")V");
+        code.mark(fueled);
+        code.jump(Code.GOTO, start);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStatement(Stmt.Expression stmt) {
+        Local local = null;
+        if (stmt.expr instanceof Expr.Assign) {
+            Expr.Assign assign = (Expr.Assign) stmt.expr;
+            local = variable(assign.depth, assign.slot);
+        }
+        if (local != null) {
+            store(local, generate(((Expr.Assign) stmt.expr).value));
+        } else {
+            discard(generate(stmt.expr));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(Stmt.Return stmt) {
+        if (stmt.expr instanceof Expr.Call) {
+            call((Expr.Call) stmt.expr, "tailCall");
+        } else if (stmt.expr != null) {
+            object(stmt.expr);
+        } else {
+            code.op(Code.ACONST_NULL);
+        }
+        writeBack();
+        code.op(Code.ARETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(Stmt.Block stmt) {
+        if (stmt.slots == 0) {
+            statements(stmt.statements);
+            return null;
+        }
+        scopes.add(nextScope++);
+        statements(stmt.statements);
+        scopes.remove(scopes.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStatement(FunctionDeclaration stmt) {
+        throw new Unsupported("creates a closure");
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        code.jump(Code.GOTO, loops.get(loops.size() - 1));
+        return null;
+    }
+
+    private static final class JitClassLoader extends ClassLoader {
+        JitClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
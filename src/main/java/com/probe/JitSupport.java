@@ -0,0 +1,195 @@
+package com.probe;
+
+import java.util.Arrays;
+
+import com.probe.builtin.ExecutionException;
+
+/**
+ * Runtime entry points for code generated by {@link JitCompiler}. Generated classes are defined by their own
+ * class loader and only see public API, so every operation that is not plain arithmetic on doubles goes through
+ * here. Error messages are the ones the {@link Interpreter} reports for the same expression.
+ */
+public final class JitSupport {
+
+    private JitSupport() {
+    }
+
+    public static Object global(Interpreter interpreter, int slot, Token name) {
+        return interpreter.global(slot, name);
+    }
+
+    public static Object assignGlobal(Interpreter interpreter, int slot, Token name, Object value) {
+        interpreter.assignGlobal(slot, name, value);
+        return value;
+    }
+
+    public static Object get(Object closure, int depth, int slot) {
+        return ((Environment) closure).getAt(depth, slot);
+    }
+
+    public static Object assign(Object closure, int depth, int slot, Object value) {
+        ((Environment) closure).assignAt(depth, slot, value);
+        return value;
+    }
+
+    public static boolean isDefined(Interpreter interpreter, int slot) {
+        return interpreter.globalEnvironment().get(slot) != Environment.UNDEFINED;
+    }
+
+    public static boolean isGlobalNumber(Interpreter interpreter, int slot) {
+        return interpreter.globalEnvironment().get(slot) instanceof Double;
+    }
+
+    public static double globalDouble(Interpreter interpreter, int slot) {
+        return (double) interpreter.globalEnvironment().get(slot);
+    }
+
+    // reads a global that was checked to be defined when the loop was entered
+    public static Object loadGlobal(Interpreter interpreter, int slot) {
+        return interpreter.globalEnvironment().get(slot);
+    }
+
+    // writes back a global that was checked to be defined when the loop was entered
+    public static void storeGlobal(Interpreter interpreter, int slot, Object value) {
+        interpreter.globalEnvironment().set(slot, value);
+    }
+
+    public static void storeGlobalDouble(Interpreter interpreter, int slot, double value) {
+        interpreter.globalEnvironment().setDouble(slot, value);
+    }
+
+    public static boolean isNumber(Object closure, int depth, int slot) {
+        return ((Environment) closure).getAt(depth, slot) instanceof Double;
+    }
+
+    public static double getDouble(Object closure, int depth, int slot) {
+        return (double) ((Environment) closure).getAt(depth, slot);
+    }
+
+    public static void assignDouble(Object closure, int depth, int slot, double value) {
+        ((Environment) closure).assignDoubleAt(depth, slot, value);
+    }
+
+    public static Object add(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double) {
+            return (double) left + (double) right;
+        }
+        if (Values.isString(left) && Values.isString(right)) {
+            return Values.concat(left, right);
+        }
+        throw new RuntimeError(operator, "str or num", ErrorReporter.Mode.COVER);
+    }
+
+    public static double subtract(Object left, Object right, Token operator) {
+        validateNumbers(operator, left, right);
+        return (double) left - (double) right;
+    }
+
+    public static double multiply(Object left, Object right, Token operator) {
+        validateNumbers(operator, left, right);
+        return (double) left * (double) right;
+    }
+
+    public static double divide(Object left, Object right, Token operator) {
+        validateNumbers(operator, left, right);
+        return (double) left / (double) right;
+    }
+
+    public static boolean less(Object left, Object right, Token operator) {
+        validateNumbers(operator, left, right);
+        return (double) left < (double) right;
+    }
+
+    public static boolean lessEqual(Object left, Object right, Token operator) {
+        validateNumbers(operator, left, right);
+        return (double) left <= (double) right;
+    }
+
+    public static boolean greater(Object left, Object right, Token operator) {
+        validateNumbers(operator, left, right);
+        return (double) left > (double) right;
+    }
+
+    public static boolean greaterEqual(Object left, Object right, Token operator) {
+        validateNumbers(operator, left, right);
+        return (double) left >= (double) right;
+    }
+
+    private static void validateNumbers(Token operator, Object left, Object right) {
+        if (!(left instanceof Double && right instanceof Double)) {
+            throw new RuntimeError(operator, "DOUBLE NO", ErrorReporter.Mode.COVER);
+        }
+    }
+
+    public static double negate(Object value) {
+        return -(double) value;
+    }
+
+    // the same answer Values.isEqual gives for two boxed doubles, NaN included
+    public static boolean numbersEqual(double left, double right) {
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+    }
+
+    public static boolean isTrue(Object value) {
+        return Values.isTrue(value);
+    }
+
+    /**
+     * The call of a {@code return f(...)}, which hands a Probe function back as a {@link TailCall} instead of
+     * calling it.
+     */
+    public static Object tailCall(Interpreter interpreter, Object callee, Token rightParen, Object... arguments) {
+        if (callee instanceof ProbeFunction) {
+            ProbeFunction function = (ProbeFunction) callee;
+            if (function.parameters() != arguments.length) {
+                throw new RuntimeError(rightParen, "not enough arguments to call", ErrorReporter.Mode.COVER);
+            }
+            return new TailCall(function, Arrays.asList(arguments));
+        }
+        return call(interpreter, callee, rightParen, arguments);
+    }
+
+    public static Object call(Interpreter interpreter, Object callee, Token rightParen, Object... arguments) {
+        Callable callable = (Callable) callee;
+        if (callable.parameters() != arguments.length) {
+            throw new RuntimeError(rightParen, "not enough arguments to call", ErrorReporter.Mode.COVER);
+        }
+        try {
+            return callable.call(interpreter, Arrays.asList(arguments));
+        } catch (ExecutionException e) {
+            throw new RuntimeError(rightParen, e.getMessage(), ErrorReporter.Mode.COVER);
+        }
+    }
+
+    public static Object array(Object... elements) {
+        return new ProbeArray(elements);
+    }
+
+    public static Object map(Object[] entries, Token leftBrace) {
+        ProbeMap map = new ProbeMap();
+        for (int i = 0; i < entries.length; i += 2) {
+            Values.setIndex(map, entries[i], entries[i + 1], leftBrace);
+        }
+        return map;
+    }
+
+    public static Object index(Object arr, Object pos, Token leftSquare) {
+        return Values.index(arr, pos, leftSquare);
+    }
+
+    public static Object setIndex(Object arr, Object pos, Object value, Token leftSquare) {
+        return Values.setIndex(arr, pos, value, leftSquare);
+    }
+
+    public static boolean tick(Interpreter interpreter) {
+        return interpreter.tick();
+    }
+
+    public static void refuel(Interpreter interpreter, Token token) {
+        interpreter.refuel(token);
+    }
+
+    public static void print(Interpreter interpreter, Object value) {
+        interpreter.print(value);
+    }
+}
@@ -1,36 +1,23 @@
 package com.probe;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import static com.probe.TokenType.*;
 
 class Lexer {
 
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fn", FN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
-        keywords.put("break", BREAK);
-    }
-
-    private final List<Token> tokens;
-    private final String source;
+    // compared in place against the source, so identifiers are never cut out while scanning
+    private static final String[] keywords = {
+            "and", "else", "false", "for", "fn", "if", "nil", "or", "print", "return", "true", "var", "while", "break"
+    };
+    private static final TokenType[] keywordTypes = {
+            AND, ELSE, FALSE, FOR, FN, IF, NIL, OR, PRINT, RETURN, TRUE, VAR, WHILE, BREAK
+    };
+
+    private TokenStream tokens;
+    private final CharSequence source;
+    // a mapped source is decoded only as far as it is read, so its end is found by reading up to it
+    private final MappedSource mapped;
+    // how many characters the source is known to have, all of them unless it is mapped
+    private int length;
     private final ErrorReporter reporter;
 
     private int start;
@@ -40,10 +27,11 @@ class Lexer {
     private int startColumn;
     private boolean error;
 
-    Lexer(final String source, ErrorReporter reporter) {
+    Lexer(final CharSequence source, ErrorReporter reporter) {
         this.source = source;
+        this.mapped = source instanceof MappedSource ? (MappedSource) source : null;
+        this.length = mapped != null ? 0 : source.length();
         this.reporter = reporter;
-        this.tokens = new ArrayList<>();
         this.start = 0;
         this.current = 0;
         this.line = 1;
@@ -52,14 +40,39 @@ class Lexer {
         this.error = false;
     }
 
-    List<Token> scan() {
-        while (!isAtEnd()) {
+    TokenStream scan() {
+        // about one token for every eight characters, the stream grows when a source is denser
+        int size = mapped != null ? mapped.size() : source.length();
+        tokens = new TokenStream(source, size / 8 + 16);
+        while (scanNext()) {
+        }
+        return tokens;
+    }
+
+    /**
+     * Tokens scanned as the parser asks for them, so a big source is never held as tokens all at once.
+     */
+    TokenStream stream() {
+        tokens = new TokenStream(source, 64);
+        tokens.feed(this);
+        return tokens;
+    }
+
+    /**
+     * Scans the next token, false once the stream ends with EOF.
+     */
+    boolean scanNext() {
+        int end = tokens.end();
+        while (!isAtEnd() && tokens.end() == end) {
             start = current;
             startColumn = column;
             scanToken();
         }
-        tokens.add(new Token(EOF, "", null, line, column));
-        return tokens;
+        if (tokens.end() == end) {
+            tokens.add(EOF, current, 0, line, column);
+            return false;
+        }
+        return true;
     }
 
     private void scanToken() {
@@ -98,6 +111,9 @@ class Lexer {
             case ';':
                 addToken(SEMICOLON);
                 break;
+            case ':':
+                addToken(COLON);
+                break;
             case '*':
                 addToken(STAR);
                 break;
@@ -152,9 +168,27 @@ class Lexer {
 
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
-        String text = source.substring(start, current);
-        TokenType type = keywords.getOrDefault(text, IDENTIFIER);
-        addToken(type);
+        addToken(keyword());
+    }
+
+    private TokenType keyword() {
+        int length = current - start;
+        for (int i = 0; i < keywords.length; ++i) {
+            String keyword = keywords[i];
+            if (keyword.length() == length && matches(keyword)) {
+                return keywordTypes[i];
+            }
+        }
+        return IDENTIFIER;
+    }
+
+    private boolean matches(String keyword) {
+        for (int i = 0; i < keyword.length(); ++i) {
+            if (source.charAt(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private boolean isAlphaNumeric(char c) {
@@ -171,7 +205,7 @@ class Lexer {
                 advance();
             }
         }
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER);
     }
 
     private char peekNext() {
@@ -180,7 +214,7 @@ class Lexer {
 
 
     private char peek(int offset) {
-        return current + offset < source.length() ? source.charAt(current + offset) : '\0';
+        return has(current + offset) ? source.charAt(current + offset) : '\0';
     }
 
     private boolean isAlpha(char c) {
@@ -204,8 +238,7 @@ class Lexer {
             return;
         }
         advance(); // last "
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        addToken(STRING);
     }
 
     private void reportError(String errorMsg, int line, int col) {
@@ -230,12 +263,7 @@ class Lexer {
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
-    }
-
-    private void addToken(TokenType type, Object value) {
-        String lexeme = source.substring(start, current);
-        tokens.add(new Token(type, lexeme, value, line, startColumn));
+        tokens.add(type, start, current - start, line, startColumn);
     }
 
     private char advance() {
@@ -244,7 +272,11 @@ class Lexer {
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !has(current);
+    }
+
+    private boolean has(int index) {
+        return index < length || mapped != null && index < (length = mapped.extent(index));
     }
 
     public boolean isError() {
@@ -0,0 +1,218 @@
+package com.probe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A UTF-8 script read through a memory-mapped file and decoded only as far as it is read. The mapping is taken in
+ * windows of {@value #WINDOW} bytes, each decoded the first time a character in it is asked for. A window of plain
+ * ASCII, which nearly every script is, is read a character at a time straight from the mapping; any other window is
+ * decoded into a buffer, and only the last two of those are kept. Up to the first window that is not ASCII, a
+ * character is simply the byte at its index.
+ * <p>
+ * Where a character is depends on every window before it, so windows are found in order and {@link #length} decodes
+ * the whole file. The {@link Lexer} finds the end with {@link #extent} instead, so time to the first statement does
+ * not grow with the file. Not safe for use from more than one thread.
+ */
+final class MappedSource implements CharSequence {
+    private static final int WINDOW = 1 << 16;
+
+    private final MappedByteBuffer bytes;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // where each window found so far starts, in bytes and in characters, with one entry more for the end of the last
+    private int[] byteStarts = new int[16];
+    private int[] charStarts = new int[16];
+    private boolean[] ascii = new boolean[16];
+    private int windows;
+    // the characters before this are all ASCII, so each is the byte at its own index
+    private int plain;
+
+    // the window read last, with chars null when it is ASCII
+    private int first;
+    private int end;
+    // from the index of a character in an ASCII window to the index of its byte
+    private int shift;
+    private char[] chars;
+    // the decoded window read before it, which a lexeme across the boundary goes back to
+    private int previous = -1;
+    private char[] previousChars;
+
+    private MappedSource(MappedByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    static CharSequence load(Path path) throws IOException {
+        MappedByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large");
+            }
+            // the mapping outlives the channel
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new MappedSource(bytes);
+    }
+
+    /**
+     * The size of the file in bytes, an upper bound on its length that is known without decoding it.
+     */
+    int size() {
+        return bytes.limit();
+    }
+
+    /**
+     * How many characters are found once the source is read on to index, more than index unless it ends before.
+     */
+    int extent(int index) {
+        while (index >= charStarts[windows] && byteStarts[windows] < bytes.limit()) {
+            scan();
+        }
+        return charStarts[windows];
+    }
+
+    @Override
+    public int length() {
+        return extent(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < plain) {
+            return (char) bytes.get(index);
+        }
+        return decoded(index);
+    }
+
+    // kept out of charAt so that stays small enough to inline
+    private char decoded(int index) {
+        if (index < first || index >= end) {
+            if (!find(index)) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + charStarts[windows]);
+            }
+        }
+        return chars == null ? (char) bytes.get(shift + index) : chars[index - first];
+    }
+
+    // lexemes are cut out through here, so they come back as strings of their own
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (end <= plain) {
+            return string(start, end);
+        }
+        if (start >= first && end <= this.end) {
+            return chars != null ? new String(chars, start - first, end - start) : string(shift + start, shift + end);
+        }
+        // across windows
+        char[] copy = new char[end - start];
+        for (int i = 0; i < copy.length; ++i) {
+            copy[i] = charAt(start + i);
+        }
+        return new String(copy);
+    }
+
+    // the ASCII bytes from and up to to
+    private String string(int from, int to) {
+        byte[] copy = new byte[to - from];
+        for (int i = 0; i < copy.length; ++i) {
+            copy[i] = bytes.get(from + i);
+        }
+        return new String(copy, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    // makes the window holding index the current one, false when the file ends before index
+    private boolean find(int index) {
+        if (index >= extent(index)) {
+            return false;
+        }
+        int window = Arrays.binarySearch(charStarts, 0, windows + 1, index);
+        select(window >= 0 ? window : -window - 2);
+        return true;
+    }
+
+    // finds where the next window ends and how many characters it holds
+    private void scan() {
+        int from = byteStarts[windows];
+        int to = Math.min(from + WINDOW, bytes.limit());
+        // a window never splits the bytes of a character
+        if (to < bytes.limit()) {
+            int boundary = to;
+            while (boundary > from && (bytes.get(boundary) & 0xC0) == 0x80) {
+                boundary--;
+            }
+            to = boundary > from ? boundary : to;
+        }
+        int count = to - from;
+        boolean isAscii = true;
+        for (int i = from; i < to; ++i) {
+            if (bytes.get(i) < 0) {
+                // kept as the previous window, since a lexer reading on selects it next
+                previous = windows;
+                previousChars = decode(from, to);
+                count = previousChars.length;
+                isAscii = false;
+                break;
+            }
+        }
+        if (windows + 1 == byteStarts.length) {
+            byteStarts = Arrays.copyOf(byteStarts, byteStarts.length * 2);
+            charStarts = Arrays.copyOf(charStarts, charStarts.length * 2);
+            ascii = Arrays.copyOf(ascii, ascii.length * 2);
+        }
+        ascii[windows] = isAscii;
+        windows++;
+        byteStarts[windows] = to;
+        charStarts[windows] = charStarts[windows - 1] + count;
+        if (isAscii && plain == charStarts[windows - 1]) {
+            plain = charStarts[windows];
+        }
+    }
+
+    private void select(int window) {
+        int from = byteStarts[window];
+        int to = byteStarts[window + 1];
+        char[] decoded = null;
+        if (!ascii[window]) {
+            decoded = window == previous ? previousChars : decode(from, to);
+        }
+        if (chars != null && first != charStarts[window]) {
+            previous = Arrays.binarySearch(charStarts, 0, windows + 1, first);
+            previousChars = chars;
+        }
+        first = charStarts[window];
+        end = charStarts[window + 1];
+        shift = from - first;
+        chars = decoded;
+    }
+
+    private char[] decode(int from, int to) {
+        ByteBuffer window = bytes.duplicate();
+        window.limit(to).position(from);
+        try {
+            CharBuffer decoded = decoder.decode(window);
+            char[] result = new char[decoded.remaining()];
+            decoded.get(result);
+            return result;
+        } catch (CharacterCodingException e) {
+            // not thrown, malformed input is replaced
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.probe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simplifies parsed statements before they are resolved: folds operators whose operands are literals,
+ * drops branches and loops whose condition is a literal, removes statements that follow a return or break
+ * and unwraps groupings. Declarations after a return or break stay, since the scope's functions are hoisted.
+ * Anything that would fail at runtime is left alone so the error is still reported.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    List<Stmt> optimize(List<Stmt> stmts) {
+        List<Stmt> optimized = new ArrayList<>(stmts.size());
+        boolean reachable = true;
+        for (Stmt stmt : stmts) {
+            if (!reachable) {
+                // the scope's functions are hoisted above the return or break, and may read its variables
+                if (stmt instanceof FunctionDeclaration) {
+                    optimized.add(optimize(stmt));
+                } else if (stmt instanceof Stmt.Var) {
+                    optimized.add(new Stmt.Var(((Stmt.Var) stmt).name, null));
+                }
+                continue;
+            }
+            Stmt result = optimize(stmt);
+            if (isEmpty(result)) {
+                continue;
+            }
+            optimized.add(result);
+            reachable = !completesAbruptly(result);
+        }
+        return optimized;
+    }
+
+    /**
+     * Optimizes a whole script. Its last statement is kept when it is an expression, even one that folds to a
+     * literal, because an embedding application takes it as the script's result.
+     */
+    List<Stmt> optimizeScript(List<Stmt> stmts) {
+        int last = stmts.size() - 1;
+        if (last < 0 || !(stmts.get(last) instanceof Stmt.Expression)) {
+            return optimize(stmts);
+        }
+        List<Stmt> optimized = optimize(stmts.subList(0, last));
+        if (!completesAbruptly(optimized)) {
+            optimized.add(new Stmt.Expression(optimize(((Stmt.Expression) stmts.get(last)).expr)));
+        }
+        return optimized;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private static boolean isEmpty(Stmt stmt) {
+        return stmt instanceof Stmt.Block && ((Stmt.Block) stmt).statements.isEmpty();
+    }
+
+    private static boolean completesAbruptly(Stmt stmt) {
+        if (stmt instanceof Stmt.Return || stmt instanceof Stmt.Break) {
+            return true;
+        }
+        if (stmt instanceof Stmt.Block) {
+            return completesAbruptly(((Stmt.Block) stmt).statements);
+        }
+        if (stmt instanceof Stmt.If) {
+            Stmt.If ifStmt = (Stmt.If) stmt;
+            return ifStmt.alternative != null && completesAbruptly(ifStmt.then) && completesAbruptly(ifStmt.alternative);
+        }
+        return false;
+    }
+
+    // declarations kept after a return or break do not run, so any statement completing abruptly decides
+    private static boolean completesAbruptly(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            if (completesAbruptly(stmt)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Stmt empty() {
+        return new Stmt.Block(Collections.emptyList());
+    }
+
+    private static boolean isLiteral(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    private static Object value(Expr expr) {
+        return ((Expr.Literal) expr).value;
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (isLiteral(left) && isLiteral(right)) {
+            Object folded = fold(expr.operator.type, value(left), value(right));
+            if (folded != null) {
+                return new Expr.Literal(folded);
+            }
+        }
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    // null when the operation cannot be folded because it would fail at runtime
+    private static Object fold(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case EQUAL_EQUAL:
+                return Values.isEqual(left, right);
+            case BANG_EQUAL:
+                return !Values.isEqual(left, right);
+            case PLUS:
+                if (left instanceof String && right instanceof String) {
+                    return (String) left + (String) right;
+                }
+                break;
+        }
+        if (!(left instanceof Double && right instanceof Double)) {
+            return null;
+        }
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator) {
+            case PLUS:
+                return a + b;
+            case MINUS:
+                return a - b;
+            case STAR:
+                return a * b;
+            case SLASH:
+                return a / b;
+            case LESS:
+                return a < b;
+            case LESS_EQUAL:
+                return a <= b;
+            case GREATER:
+                return a > b;
+            case GREATER_EQUAL:
+                return a >= b;
+        }
+        return null;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        if (isLiteral(right)) {
+            Object value = value(right);
+            if (expr.operator.type == TokenType.BANG) {
+                return new Expr.Literal(!Values.isTrue(value));
+            }
+            if (expr.operator.type == TokenType.MINUS && value instanceof Double) {
+                return new Expr.Literal(-(double) value);
+            }
+        }
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return optimize(expr.expr);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        return new Expr.Assign(expr.name, optimize(expr.value));
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (isLiteral(left)) {
+            boolean leftTrue = Values.isTrue(value(left));
+            if (expr.operator.type == TokenType.OR && leftTrue) {
+                return new Expr.Literal(true);
+            }
+            if (expr.operator.type == TokenType.AND && !leftTrue) {
+                return new Expr.Literal(false);
+            }
+            // the result is now just the truthiness of the right operand
+            if (isLiteral(right)) {
+                return new Expr.Literal(Values.isTrue(value(right)));
+            }
+        }
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(optimize(argument));
+        }
+        return new Expr.Call(optimize(expr.callee), arguments, expr.rightParen);
+    }
+
+    @Override
+    public Expr visitArrayExpr(Expr.Array expr) {
+        List<Expr> elements = new ArrayList<>(expr.elements.size());
+        for (Expr element : expr.elements) {
+            elements.add(optimize(element));
+        }
+        return new Expr.Array(elements);
+    }
+
+    @Override
+    public Expr visitMapExpr(Expr.Map expr) {
+        List<Expr> keys = new ArrayList<>(expr.keys.size());
+        List<Expr> values = new ArrayList<>(expr.values.size());
+        for (int i = 0; i < expr.keys.size(); ++i) {
+            keys.add(optimize(expr.keys.get(i)));
+            values.add(optimize(expr.values.get(i)));
+        }
+        return new Expr.Map(expr.leftBrace, keys, values);
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        return new Expr.Index(optimize(expr.arr), optimize(expr.pos), expr.leftSquare);
+    }
+
+    @Override
+    public Expr visitIndexAssignExpr(Expr.IndexAssign expr) {
+        return new Expr.IndexAssign(optimize(expr.arr), optimize(expr.pos), expr.leftSquare, optimize(expr.value));
+    }
+
+    @Override
+    public Expr visitFunctionExpr(FunctionDeclaration expr) {
+        return new FunctionDeclaration(expr.keyword, expr.name, expr.parameters, optimize(expr.body));
+    }
+
+    @Override
+    public Stmt visitVarStatement(Stmt.Var stmt) {
+        return stmt.initializer == null ? stmt : new Stmt.Var(stmt.name, optimize(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitPrintStatement(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expr));
+    }
+
+    @Override
+    public Stmt visitIfStatement(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition)) {
+            if (Values.isTrue(value(condition))) {
+                return optimize(stmt.then);
+            }
+            return stmt.alternative != null ? optimize(stmt.alternative) : empty();
+        }
+        Stmt alternative = stmt.alternative != null ? optimize(stmt.alternative) : null;
+        if (alternative != null && isEmpty(alternative)) {
+            alternative = null;
+        }
+        return new Stmt.If(condition, optimize(stmt.then), alternative);
+    }
+
+    @Override
+    public Stmt visitWhileStatement(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition) && !Values.isTrue(value(condition))) {
+            return empty();
+        }
+        return new Stmt.While(stmt.keyword, condition, optimize(stmt.then));
+    }
+
+    @Override
+    public Stmt visitExpressionStatement(Stmt.Expression stmt) {
+        Expr expr = optimize(stmt.expr);
+        // a literal on its own has no effect
+        if (isLiteral(expr)) {
+            return empty();
+        }
+        return new Stmt.Expression(expr);
+    }
+
+    @Override
+    public Stmt visitReturnStatement(Stmt.Return stmt) {
+        return stmt.expr == null ? stmt : new Stmt.Return(stmt.token, optimize(stmt.expr));
+    }
+
+    @Override
+    public Stmt visitBlockStatement(Stmt.Block stmt) {
+        return new Stmt.Block(optimize(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitFunctionStatement(FunctionDeclaration stmt) {
+        return new FunctionDeclaration(stmt.keyword, stmt.name, stmt.parameters, optimize(stmt.body));
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+}
@@ -1,16 +1,17 @@
 package com.probe;
 
 public class ParseError extends RuntimeException {
-    private final Token token;
+    // position in the TokenStream being parsed
+    private final int token;
     private final ErrorReporter.Mode mode;
 
-    public ParseError(Token token, String message, ErrorReporter.Mode mode) {
+    public ParseError(int token, String message, ErrorReporter.Mode mode) {
         super(message);
         this.token = token;
         this.mode = mode;
     }
 
-    public Token getToken() {
+    public int getToken() {
         return token;
     }
 
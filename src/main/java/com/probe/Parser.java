@@ -9,6 +9,7 @@ import static com.probe.TokenType.AND;
 import static com.probe.TokenType.BANG;
 import static com.probe.TokenType.BANG_EQUAL;
 import static com.probe.TokenType.BREAK;
+import static com.probe.TokenType.COLON;
 import static com.probe.TokenType.COMMA;
 import static com.probe.TokenType.ELSE;
 import static com.probe.TokenType.EOF;
@@ -46,12 +47,12 @@ import static com.probe.TokenType.WHILE;
 
 class Parser {
 
-    private final List<Token> tokens;
+    private final TokenStream tokens;
     private final ErrorReporter reporter;
     private int current;
     private boolean hasErrors = false;
 
-    Parser(List<Token> tokens, ErrorReporter reporter) {
+    Parser(TokenStream tokens, ErrorReporter reporter) {
         this.tokens = tokens;
         this.reporter = reporter;
     }
@@ -65,6 +66,41 @@ class Parser {
         return stmts;
     }
 
+    boolean hasNext() {
+        return !isAtEnd();
+    }
+
+    /**
+     * Parses one top-level declaration and lets go of its tokens, null when it has an error.
+     */
+    Stmt next() {
+        Stmt stmt = declaration();
+        // errors and sync still look at the token before the current one
+        tokens.release(current - 1);
+        return stmt;
+    }
+
+    /**
+     * Whether the rest of the source declares a top-level function called name. It reads on to the end through
+     * the tokens alone, letting go of them as it goes, so it is only for once a streamed script has stopped.
+     */
+    boolean declaresLater(String name) {
+        int depth = 0;
+        for (int i = current; tokens.type(i) != EOF; ++i) {
+            TokenType type = tokens.type(i);
+            if (type == LEFT_BRACE) {
+                depth++;
+            } else if (type == RIGHT_BRACE) {
+                depth--;
+            } else if (depth == 0 && type == FN && tokens.type(i + 1) == IDENTIFIER
+                    && tokens.lexeme(i + 1).equals(name)) {
+                return true;
+            }
+            tokens.release(i);
+        }
+        return false;
+    }
+
     private Stmt declaration() {
         try {
             if (match(VAR)) return varDeclaration();
@@ -73,7 +109,7 @@ class Parser {
         } catch (ParseError error) {
 
             // Probe.report(error.getToken(), error.getMessage());
-            reporter.report(error.getToken(), error.getMessage(), error.getMode());
+            reporter.report(tokens, error.getToken(), error.getMessage(), error.getMode());
             sync();
             hasErrors = true;
             return null;
@@ -82,13 +118,14 @@ class Parser {
 
     //TODO add EOF checking
     private FunctionDeclaration functionDeclaration(boolean isAnonymous) {
+        Token keyword = previous();
         Token name = null;
         if (!isAnonymous) {
-            name = consume(IDENTIFIER, "expect function name", ErrorReporter.Mode.END);
+            name = tokens.token(consume(IDENTIFIER, "expect function name", ErrorReporter.Mode.END));
             consume(LEFT_PAREN, "expect ( after function name", ErrorReporter.Mode.END);
         } else {
             if (check(IDENTIFIER)) {
-                throw new ParseError(peek(), "Anonymous function expected here", ErrorReporter.Mode.COVER);
+                throw new ParseError(current, "Anonymous function expected here", ErrorReporter.Mode.COVER);
             }
             consume(LEFT_PAREN, "expect ( after fn", ErrorReporter.Mode.END);
         }
@@ -96,12 +133,12 @@ class Parser {
         List<Token> parameters = new ArrayList<>();
         if (!check(RIGHT_PAREN)) {
             do {
-                parameters.add(consume(IDENTIFIER, "Expect parameter name.", ErrorReporter.Mode.END));
+                parameters.add(tokens.token(consume(IDENTIFIER, "Expect parameter name.", ErrorReporter.Mode.END)));
             } while (match(COMMA));
         }
         consume(RIGHT_PAREN, "expect ) after parameters", ErrorReporter.Mode.END);
         List<Stmt> body = block();
-        return new FunctionDeclaration(name, parameters, body);
+        return new FunctionDeclaration(keyword, name, parameters, body);
     }
 
     private Stmt statement() {
@@ -116,6 +153,7 @@ class Parser {
     }
 
     private Stmt forStmt() {
+        Token keyword = previous();
 
         consume(LEFT_PAREN, "expect ( after for", ErrorReporter.Mode.END);
 
@@ -147,7 +185,7 @@ class Parser {
         }
 
         if (condition == null) condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
+        body = new Stmt.While(keyword, condition, body);
 
         if (initializer != null) {
             body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -173,9 +211,10 @@ class Parser {
     }
 
     private Stmt returnStmt() {
+        Token returnToken = previous();
         Expr expr = expression();
         consume(SEMICOLON, "expect ; after expression", ErrorReporter.Mode.END);
-        return new Stmt.Return(expr);
+        return new Stmt.Return(returnToken, expr);
     }
 
     private Stmt expressionStatement() {
@@ -186,11 +225,12 @@ class Parser {
     }
 
     private Stmt whileStmt() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "expect ( after while", ErrorReporter.Mode.END);
         Expr expr = expression();
         consume(RIGHT_PAREN, "expect ) after while condition", ErrorReporter.Mode.END);
         Stmt then = statement();
-        return new Stmt.While(expr, then);
+        return new Stmt.While(keyword, expr, then);
     }
 
     private Stmt ifStmt() {
@@ -212,7 +252,7 @@ class Parser {
     }
 
     private Stmt varDeclaration() {
-        Token name = consume(IDENTIFIER, "Expect identifier after var", ErrorReporter.Mode.END);
+        Token name = tokens.token(consume(IDENTIFIER, "Expect identifier after var", ErrorReporter.Mode.END));
         Expr initializer = null;
         if (match(EQUAL)) {
             initializer = expression();
@@ -228,10 +268,13 @@ class Parser {
     private Expr assignment() {
         Expr expr = or();
         if (match(EQUAL)) {
-            Token equals = previous();
+            int equals = current - 1;
             Expr value = assignment();
             if (expr instanceof Expr.Variable) {
                 return new Expr.Assign(((Expr.Variable) expr).name, value);
+            } else if (expr instanceof Expr.Index) {
+                Expr.Index index = (Expr.Index) expr;
+                return new Expr.IndexAssign(index.arr, index.pos, index.leftSquare, value);
             } else {
                 throw error(equals, "Invalid assignment", ErrorReporter.Mode.END);
             }
@@ -288,7 +331,7 @@ class Parser {
     private Expr array() {
         if (match(LEFT_SQUARE)) {
             List<Expr> values = new ArrayList<>();
-            if (!check(RIGHT_PAREN)) {
+            if (!check(RIGHT_SQUARE)) {
                 do {
                     values.add(expression());
                 } while (match(COMMA));
@@ -301,11 +344,11 @@ class Parser {
 
     private Expr index() {
         Expr expr = call();
-        if (match(LEFT_SQUARE)) {
+        while (match(LEFT_SQUARE)) {
             Token leftSquare = previous();
             Expr pos = expression();
             consume(RIGHT_SQUARE, "expect ] after index", ErrorReporter.Mode.END);
-            return new Expr.Index(expr, pos, leftSquare);
+            expr = new Expr.Index(expr, pos, leftSquare);
         }
         return expr;
     }
@@ -319,7 +362,7 @@ class Parser {
                     arguments.add(expression());
                 } while (match(COMMA));
             }
-            Token rightParen = consume(RIGHT_PAREN, "Expect ) after arguments", ErrorReporter.Mode.END);
+            Token rightParen = tokens.token(consume(RIGHT_PAREN, "Expect ) after arguments", ErrorReporter.Mode.END));
             return new Expr.Call(expr, arguments, rightParen);
         }
         return expr;
@@ -329,7 +372,7 @@ class Parser {
         if (match(TRUE)) return new Expr.Literal(true);
         if (match(FALSE)) return new Expr.Literal(false);
         if (match(NIL)) return new Expr.Literal(null);
-        if (match(STRING, NUMBER)) return new Expr.Literal(previous().value);
+        if (match(STRING, NUMBER)) return new Expr.Literal(tokens.value(current - 1));
         if (match(IDENTIFIER)) return new Expr.Variable(previous());
         if (match(LEFT_PAREN)) {
             Expr expr = expression();
@@ -339,10 +382,28 @@ class Parser {
         if (match(FN)) {
             return functionDeclaration(true);
         }
-        throw new ParseError(peek(), "expect expression", ErrorReporter.Mode.END);
+        if (match(LEFT_BRACE)) {
+            return map();
+        }
+        throw new ParseError(current, "expect expression", ErrorReporter.Mode.END);
     }
 
 
+    private Expr map() {
+        Token leftBrace = previous();
+        List<Expr> keys = new ArrayList<>();
+        List<Expr> values = new ArrayList<>();
+        if (!check(RIGHT_BRACE)) {
+            do {
+                keys.add(expression());
+                consume(COLON, "Expect : after key", ErrorReporter.Mode.END);
+                values.add(expression());
+            } while (match(COMMA));
+        }
+        consume(RIGHT_BRACE, "Expect } after entries", ErrorReporter.Mode.END);
+        return new Expr.Map(leftBrace, keys, values);
+    }
+
     private Expr binary(Supplier<Expr> operand, TokenType... types) {
         Expr expr = operand.get();
         while (match(types)) {
@@ -354,33 +415,36 @@ class Parser {
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
     private boolean match(TokenType... types) {
         if (isAtEnd()) return false;
-        boolean matches = Arrays.stream(types).anyMatch(this::check);
-        if (matches) {
-            advance();
-            return true;
+        TokenType type = tokens.type(current);
+        for (TokenType candidate : types) {
+            if (type == candidate) {
+                current++;
+                return true;
+            }
         }
         return false;
     }
 
-    private Token consume(TokenType type, String error, ErrorReporter.Mode mode) {
-        if (check(type)) return advance();
-        throw error(previous(), error, mode);
+    // the position of the token, which only becomes a Token where the tree keeps it
+    private int consume(TokenType type, String error, ErrorReporter.Mode mode) {
+        if (check(type)) return current++;
+        throw error(current - 1, error, mode);
     }
 
-    private ParseError error(Token token, String message, ErrorReporter.Mode mode) {
+    private ParseError error(int token, String message, ErrorReporter.Mode mode) {
         return new ParseError(token, message, mode);
     }
 
     private void sync() {
 
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON) return;
-            switch (peek().type) {
+            if (tokens.type(current - 1) == SEMICOLON) return;
+            switch (tokens.type(current)) {
                 case FN:
                 case VAR:
                 case FOR:
@@ -390,24 +454,16 @@ class Parser {
                 case RETURN:
                     return;
             }
-            advance();
+            current++;
         }
     }
 
     private boolean check(TokenType type) {
-        return !isAtEnd() && tokens.get(current).type == type;
-    }
-
-    private Token advance() {
-        return tokens.get(current++);
-    }
-
-    private Token peek() {
-        return tokens.get(current);
+        return !isAtEnd() && tokens.type(current) == type;
     }
 
     private boolean isAtEnd() {
-        return tokens.get(current).type == EOF;
+        return tokens.type(current) == EOF;
     }
 
     public boolean isError() {
@@ -1,19 +1,47 @@
 package com.probe;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.PrintWriter;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
+import com.probe.builtin.BuiltIns;
+import com.probe.vm.VM;
+import com.probe.vm.VmFunction;
+
 public class Probe {
 
     public static void main(String[] args) throws IOException {
 
-        if (args.length == 1) {
-            String s = new String(Files.readAllBytes(Paths.get(args[0])));
-            probeIt(s);
+        boolean useVm = false;
+        boolean stream = false;
+        String path = null;
+        for (String arg : args) {
+            if (arg.equals("--vm")) {
+                useVm = true;
+            } else if (arg.equals("--stream")) {
+                stream = true;
+            } else {
+                path = arg;
+            }
+        }
+
+        // streaming hands each declaration to the tree interpreter as it is parsed, the VM needs the whole script
+        if (stream && useVm) {
+            System.err.println("--stream and --vm cannot be used together");
+            return;
+        }
+
+        if (path != null) {
+            CharSequence s = MappedSource.load(Paths.get(path));
+            if (stream) {
+                streamIt(s);
+            } else {
+                probeIt(s, useVm);
+            }
         } else{
             repl();
         }
@@ -32,20 +60,117 @@ public class Probe {
 
     }
 
-    private static void probeIt(final String source) {
-        ErrorReporter reporter = new ErrorReporter(Arrays.asList(source.split("\n")));
+    private static void probeIt(final CharSequence source, boolean useVm) {
+        ErrorReporter reporter = new ErrorReporter(source);
+        String cacheDirectory = System.getProperty("probe.cache");
+        ScriptCache cache = cacheDirectory != null ? new ScriptCache(Paths.get(cacheDirectory)) : null;
+        List<Stmt> stmts = cache != null ? cache.load(source) : null;
+        if (stmts == null) {
+            stmts = parse(source, reporter);
+            if (stmts == null) {
+                return;
+            }
+            if (cache != null) {
+                cache.store(source, stmts);
+            }
+        }
+
+        Globals globals = new Globals();
+        Resolver resolver = new Resolver(globals, reporter);
+        resolver.resolve(stmts);
+        if (resolver.isError()) {
+            return;
+        }
+        if (useVm) {
+            runOnVm(stmts, globals, reporter, budget());
+        } else {
+            Interpreter interpreter = new Interpreter(reporter, globals);
+            interpreter.setBudget(budget());
+            interpreter.interpret(stmts);
+        }
+
+    }
+
+    // the optimized tree, or null when the source has errors
+    static List<Stmt> parse(CharSequence source, ErrorReporter reporter) {
+        Lexer lexer = new Lexer(source, reporter);
+        TokenStream tokens = lexer.scan();
+        if (lexer.isError()) {
+            return null;
+        }
+        Parser parser = new Parser(tokens, reporter);
+        List<Stmt> stmts = parser.parse();
+        if (parser.isError()) {
+            return null;
+        }
+        return new Optimizer().optimizeScript(stmts);
+    }
+
+    private static void streamIt(final CharSequence source) {
+        stream(source, new ErrorReporter(source), null, budget());
+    }
+
+    /**
+     * Runs every top-level declaration as soon as it is parsed, so the first output and the memory held do not
+     * depend on how long the script is. An error stops the script where it is found, after everything before it
+     * has run. Prints to {@code out}, or System.out when it is null.
+     * <p>
+     * Functions are hoisted within the top-level statement that declares them, but a top-level statement runs
+     * before the ones after it are read, so it cannot call a top-level function declared further down. A script
+     * that does stops there with the usual undefined variable error, which then says the function comes later.
+     */
+    static void stream(CharSequence source, ErrorReporter reporter, PrintWriter out, Budget budget) {
         Lexer lexer = new Lexer(source, reporter);
-        List<Token> tokens = lexer.scan();
-        if (!lexer.isError()) {
-            Parser parser = new Parser(tokens, reporter);
-            List<Stmt> stmts = parser.parse();
-
-            if (!parser.isError()) {
-                Interpreter interpreter = new Interpreter(reporter);
-                interpreter.interpret(stmts);
+        Parser parser = new Parser(lexer.stream(), reporter);
+        Optimizer optimizer = new Optimizer();
+        Globals globals = new Globals();
+        Resolver resolver = new Resolver(globals, reporter);
+        Interpreter interpreter = new Interpreter(reporter, globals);
+        interpreter.setOutput(out);
+        interpreter.setBudget(budget);
+        while (parser.hasNext()) {
+            Stmt stmt = parser.next();
+            if (lexer.isError() || parser.isError()) {
+                return;
+            }
+            List<Stmt> stmts = optimizer.optimize(Collections.singletonList(stmt));
+            resolver.resolve(stmts);
+            if (resolver.isError()) {
+                return;
+            }
+            try {
+                interpreter.run(stmts);
+            } catch (RuntimeError error) {
+                String message = error.getMessage();
+                String name = error.token.lexeme;
+                if (message.equals("Undefined variable '" + name + "'.") && parser.declaresLater(name)) {
+                    message += " It is a function declared further down, and --stream runs each top-level"
+                            + " statement before reading the ones after it.";
+                }
+                reporter.report(error.token, message, error.mode);
+                return;
             }
         }
+    }
 
+    // from -Dprobe.fuel and -Dprobe.timeout, in milliseconds, or null when neither is set
+    private static Budget budget() {
+        long fuel = Long.getLong("probe.fuel", Budget.UNLIMITED);
+        long timeout = Long.getLong("probe.timeout", Budget.UNLIMITED);
+        if (fuel == Budget.UNLIMITED && timeout == Budget.UNLIMITED) {
+            return null;
+        }
+        return new Budget(fuel, timeout);
+    }
+
+    static void runOnVm(List<Stmt> stmts, Globals globals, ErrorReporter reporter, Budget budget) {
+        VmFunction script = new Compiler().compile(stmts);
+        VM vm = new VM(reporter);
+        vm.setBudget(budget);
+        for (Map.Entry<String, Callable> entry : BuiltIns.callables.entrySet()) {
+            vm.defineGlobal(globals.slot(entry.getKey()), entry.getValue());
+        }
+        vm.interpret(script);
     }
 
 }
@@ -1,19 +1,282 @@
 package com.probe;
 
-
+/**
+ * An array value, held as a persistent vector: a trie of 32-way nodes with the last, partly filled leaf kept aside
+ * as the tail. Reads and writes touch one node per level, so they are O(log32 n), and appending is amortized O(1).
+ * <p>
+ * Each array mutates only the nodes it owns, which are the nodes it created since it was last copied. A write to a
+ * node it does not own copies that node first, so {@link #copy} is O(1) and a copy and its original then share
+ * every node neither of them has written to.
+ * <p>
+ * While every element is a number the leaves are {@code double[]}, so numbers are stored unboxed and
+ * {@link #getDouble} reads them without allocating. Storing anything else rewrites the leaves as {@code Object[]}
+ * once, and the array stays generic from then on.
+ */
 public class ProbeArray {
-    private final Object[] arr;
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final class Node {
+        final Object owner;
+        // the elements of a generic leaf and the children of an inner node
+        final Object[] children;
+        // the elements of a numeric leaf
+        final double[] numbers;
+
+        Node(Object owner, Object[] children) {
+            this.owner = owner;
+            this.children = children;
+            this.numbers = null;
+        }
+
+        Node(Object owner, double[] numbers) {
+            this.owner = owner;
+            this.children = null;
+            this.numbers = numbers;
+        }
+    }
+
+    // the nodes this array may change in place are the ones created with this
+    private Object owner = new Object();
+    private int size;
+    private boolean numeric = true;
+    // bits of the index above the lowest level that pick the root's child
+    private int shift = BITS;
+    private Node root;
+    private Node tail;
 
     public ProbeArray(Object[] arr) {
-        this.arr = arr;
+        root = new Node(owner, new Object[WIDTH]);
+        for (Object value : arr) {
+            if (!(value instanceof Double)) {
+                numeric = false;
+                break;
+            }
+        }
+        tail = leaf();
+        for (Object value : arr) {
+            push(value);
+        }
+    }
+
+    private ProbeArray(boolean numeric, int size, int shift, Node root, Node tail) {
+        this.numeric = numeric;
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
     }
 
     public int size() {
-        return arr.length;
+        return size;
+    }
+
+    /**
+     * Whether every element is a number, so they can be read with {@link #getDouble}.
+     */
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    // an empty leaf of the kind this array uses
+    private Node leaf() {
+        return numeric ? new Node(owner, new double[WIDTH]) : new Node(owner, new Object[WIDTH]);
+    }
+
+    // index of the first element in the tail
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    // the leaf holding the element at index
+    private Node leaf(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.children[(index >>> level) & MASK];
+        }
+        return node;
     }
 
     public Object get(int index) {
-        return arr[index];
+        Node leaf = leaf(index);
+        return numeric ? (Object) leaf.numbers[index & MASK] : leaf.children[index & MASK];
+    }
+
+    /**
+     * The element at index of a numeric array.
+     */
+    public double getDouble(int index) {
+        return leaf(index).numbers[index & MASK];
+    }
+
+    // stores value at index of a leaf this array owns
+    private void store(Node leaf, int index, Object value) {
+        if (numeric) {
+            leaf.numbers[index & MASK] = (double) value;
+        } else {
+            leaf.children[index & MASK] = value;
+        }
+    }
+
+    public void set(int index, Object value) {
+        if (numeric && !(value instanceof Double)) {
+            generalize();
+        }
+        if (index >= tailOffset()) {
+            tail = editable(tail);
+            store(tail, index, value);
+        } else {
+            root = set(root, shift, index, value);
+        }
+    }
+
+    private Node set(Node node, int level, int index, Object value) {
+        Node result = editable(node);
+        if (level == 0) {
+            store(result, index, value);
+        } else {
+            int child = (index >>> level) & MASK;
+            result.children[child] = set((Node) node.children[child], level - BITS, index, value);
+        }
+        return result;
+    }
+
+    public void push(Object value) {
+        if (numeric && !(value instanceof Double)) {
+            generalize();
+        }
+        if (size - tailOffset() < WIDTH) {
+            tail = editable(tail);
+            store(tail, size, value);
+            size++;
+            return;
+        }
+        // the tail is full, so it goes into the trie, which grows a level when the root is full too
+        if ((size >>> BITS) > (1 << shift)) {
+            Node grown = new Node(owner, new Object[WIDTH]);
+            grown.children[0] = root;
+            grown.children[1] = path(shift, tail);
+            root = grown;
+            shift += BITS;
+        } else {
+            root = pushTail(root, shift, tail);
+        }
+        tail = leaf();
+        store(tail, 0, value);
+        size++;
+    }
+
+    private Node pushTail(Node node, int level, Node leaf) {
+        Node result = editable(node);
+        int child = ((size - 1) >>> level) & MASK;
+        if (level == BITS) {
+            result.children[child] = leaf;
+        } else {
+            Node next = (Node) node.children[child];
+            result.children[child] = next != null
+                    ? pushTail(next, level - BITS, leaf)
+                    : path(level - BITS, leaf);
+        }
+        return result;
+    }
+
+    // a chain of new nodes down to leaf
+    private Node path(int level, Node leaf) {
+        if (level == 0) {
+            return leaf;
+        }
+        Node node = new Node(owner, new Object[WIDTH]);
+        node.children[0] = path(level - BITS, leaf);
+        return node;
+    }
+
+    /**
+     * Removes the last element, the array must not be empty.
+     */
+    public Object pop() {
+        Object value = get(size - 1);
+        if (size - tailOffset() > 1) {
+            tail = editable(tail);
+            if (!numeric) {
+                tail.children[(size - 1) & MASK] = null;
+            }
+            size--;
+            return value;
+        }
+        // the tail empties, so the last leaf of the trie becomes the tail
+        Node last = size > WIDTH ? leaf(size - 2) : leaf();
+        if (size > WIDTH) {
+            Node popped = popTail(root, shift);
+            root = popped != null ? popped : new Node(owner, new Object[WIDTH]);
+            if (shift > BITS && root.children[1] == null) {
+                root = (Node) root.children[0];
+                shift -= BITS;
+            }
+        }
+        tail = last;
+        size--;
+        return value;
+    }
+
+    // the node without its last leaf, or null when that leaves it empty
+    private Node popTail(Node node, int level) {
+        int child = ((size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Node next = popTail((Node) node.children[child], level - BITS);
+            if (next == null && child == 0) {
+                return null;
+            }
+            Node result = editable(node);
+            result.children[child] = next;
+            return result;
+        }
+        if (child == 0) {
+            return null;
+        }
+        Node result = editable(node);
+        result.children[child] = null;
+        return result;
+    }
+
+    /**
+     * A copy of this array in O(1). Writes to either one leave the other as it was.
+     */
+    public ProbeArray copy() {
+        // neither array owns the shared nodes any more
+        owner = new Object();
+        return new ProbeArray(numeric, size, shift, root, tail);
+    }
+
+    private Node editable(Node node) {
+        if (node.owner == owner) {
+            return node;
+        }
+        return node.numbers != null
+                ? new Node(owner, node.numbers.clone())
+                : new Node(owner, node.children.clone());
+    }
+
+    // rewrites the leaves as Object[], leaving any nodes shared with copies as they were
+    private void generalize() {
+        root = generalize(root, shift);
+        tail = generalize(tail, 0);
+        numeric = false;
+    }
+
+    private Node generalize(Node node, int level) {
+        Object[] children = new Object[WIDTH];
+        for (int i = 0; i < WIDTH; ++i) {
+            if (level == 0) {
+                children[i] = node.numbers[i];
+            } else if (node.children[i] != null) {
+                children[i] = generalize((Node) node.children[i], level - BITS);
+            }
+        }
+        return new Node(owner, children);
     }
 
 }
@@ -0,0 +1,131 @@
+package com.probe;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import com.probe.builtin.BuiltIns;
+
+/**
+ * A script parsed and resolved once, to be evaluated any number of times, from any number of threads at once.
+ * <p>
+ * The tree is shared by every evaluation, so what the interpreter learns about it, such as the node
+ * specializations and the compiled functions and loops, carries over from one evaluation to the next. Each
+ * evaluation borrows an interpreter from a pool and hands it back with its globals cleared, so no two running
+ * evaluations share globals and none sees what an earlier one defined.
+ */
+class ProbeCompiledScript extends CompiledScript {
+    private final ProbeScriptEngine engine;
+    private final ErrorReporter reporter;
+    private final Globals globals;
+    private final List<Stmt> stmts;
+    // grows to the most evaluations that ran at the same time
+    private final Queue<Interpreter> pool = new ConcurrentLinkedQueue<>();
+
+    ProbeCompiledScript(ProbeScriptEngine engine, String source, ScriptContext context) throws ScriptException {
+        this.engine = engine;
+        this.reporter = new ErrorReporter(source, context.getErrorWriter());
+        this.globals = new Globals();
+        // the builtins get their slots now, so evaluations only ever read the table
+        for (String name : BuiltIns.callables.keySet()) {
+            globals.slot(name);
+        }
+        List<Stmt> stmts = Probe.parse(source, reporter);
+        if (stmts == null) {
+            throw compileError(context);
+        }
+        Resolver resolver = new Resolver(globals, reporter);
+        resolver.resolve(stmts);
+        if (resolver.isError()) {
+            throw compileError(context);
+        }
+        this.stmts = stmts;
+    }
+
+    private ScriptException compileError(ScriptContext context) {
+        return new ScriptException(reporter.firstMessage(), fileName(context), reporter.firstLine(),
+                reporter.firstColumn());
+    }
+
+    @Override
+    public Object eval(ScriptContext context) throws ScriptException {
+        Interpreter interpreter = pool.poll();
+        if (interpreter == null) {
+            interpreter = new Interpreter(reporter, globals);
+        }
+        Writer writer = context.getWriter();
+        PrintWriter out = writer instanceof PrintWriter ? (PrintWriter) writer : new PrintWriter(writer);
+        interpreter.setOutput(out);
+        interpreter.setBudget(budget(context));
+        try {
+            bind(interpreter, context.getBindings(ScriptContext.GLOBAL_SCOPE));
+            bind(interpreter, context.getBindings(ScriptContext.ENGINE_SCOPE));
+            Object result = interpreter.run(stmts);
+            return result instanceof Rope ? result.toString() : result;
+        } catch (RuntimeError error) {
+            throw new ScriptException(error.getMessage(), fileName(context), error.token.line, error.token.column);
+        } finally {
+            out.flush();
+            interpreter.setOutput(null);
+            interpreter.setBudget(null);
+            interpreter.reset();
+            pool.offer(interpreter);
+        }
+    }
+
+    // names the script never mentions have no slot and are skipped
+    private void bind(Interpreter interpreter, Bindings bindings) {
+        if (bindings == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+            int slot = globals.find(entry.getKey());
+            if (slot >= 0) {
+                interpreter.defineGlobal(slot, toProbe(entry.getValue()));
+            }
+        }
+    }
+
+    private static Object toProbe(Object value) {
+        if (value instanceof Number && !(value instanceof Double)) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Character || (value instanceof CharSequence && !Values.isString(value))) {
+            return value.toString();
+        }
+        return value;
+    }
+
+    // the probe.fuel and probe.timeout attributes, the timeout in milliseconds, or null when neither is set
+    private static Budget budget(ScriptContext context) {
+        long fuel = limit(context.getAttribute(ProbeScriptEngine.FUEL));
+        long timeout = limit(context.getAttribute(ProbeScriptEngine.TIMEOUT));
+        if (fuel == Budget.UNLIMITED && timeout == Budget.UNLIMITED) {
+            return null;
+        }
+        return new Budget(fuel, timeout);
+    }
+
+    private static long limit(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : Budget.UNLIMITED;
+    }
+
+    private static String fileName(ScriptContext context) {
+        Object name = context.getAttribute(ScriptEngine.FILENAME);
+        return name != null ? name.toString() : null;
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+}
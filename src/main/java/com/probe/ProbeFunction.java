@@ -3,8 +3,10 @@ package com.probe;
 import java.util.List;
 
 class ProbeFunction implements Callable {
-    private final FunctionDeclaration declaration;
+    final FunctionDeclaration declaration;
     private final Environment closure;
+    // a thread that does not see another one's write binds the compiled code again, its fields are final
+    private CompiledFunction compiled;
 
     ProbeFunction(FunctionDeclaration declaration, Environment closure) {
         this.declaration = declaration;
@@ -13,21 +15,50 @@ class ProbeFunction implements Callable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Object result = null;
-        try {
-            final Environment env = new Environment(closure);
-            for (int i = 0; i < declaration.parameters.size(); ++i) {
-                env.define(declaration.parameters.get(i).lexeme, arguments.get(i));
+        if (!interpreter.tick()) {
+            interpreter.refuel(declaration.keyword);
+        }
+        Object result = invoke(interpreter, arguments);
+        while (result instanceof TailCall) {
+            TailCall call = (TailCall) result;
+            if (!interpreter.tick()) {
+                interpreter.refuel(call.function.declaration.keyword);
             }
-            interpreter.executeBody(declaration.body, env);
-        } catch (Return returnValue) {
-            result = returnValue.result;
+            result = call.function.invoke(interpreter, call.arguments);
         }
         return result;
     }
 
+    // runs the body once, which returns a TailCall when it ends in a call to another Probe function
+    private Object invoke(Interpreter interpreter, List<Object> arguments) {
+        if (compiled != null) {
+            return compiled.call(interpreter, arguments);
+        }
+        if (declaration.compiled != null) {
+            compiled = declaration.compiled.bind(closure);
+            return compiled.call(interpreter, arguments);
+        }
+        if (declaration.invocations < JitCompiler.THRESHOLD && ++declaration.invocations == JitCompiler.THRESHOLD) {
+            JitCompiler.submit(declaration);
+        }
+        final Environment env = new Environment(closure, declaration.slots);
+        for (int i = 0; i < declaration.parameters.size(); ++i) {
+            env.set(i, arguments.get(i));
+        }
+        if (interpreter.executeBody(declaration.body, env) == Completion.RETURN) {
+            return interpreter.takeReturnValue();
+        }
+        return null;
+    }
+
     @Override
     public int parameters() {
         return declaration.parameters.size();
     }
+
+    // the same as the VM's functions print
+    @Override
+    public String toString() {
+        return "<fn " + (declaration.name == null ? "anonymous" : declaration.name.lexeme) + ">";
+    }
 }
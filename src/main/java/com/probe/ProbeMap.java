@@ -0,0 +1,142 @@
+package com.probe;
+
+/**
+ * A map value. Keys are strings and numbers, compared the way {@code ==} compares them.
+ * <p>
+ * The table uses open addressing with linear probing. Each key is stored next to its value in one array and its
+ * hash is kept in a second one. A lookup is then a short scan of neighbouring slots that only calls
+ * {@code equals} on a key whose hash matches. Removing a key shifts the keys after it back, so the table never
+ * fills up with tombstones.
+ */
+public final class ProbeMap {
+    private static final int INITIAL_CAPACITY = 8;
+
+    // key of slot i at 2i and its value at 2i + 1, a null key marks an empty slot
+    private Object[] table = new Object[2 * INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * The key a value stands for, or null when it cannot be a key. Ropes are flattened so that they hash and
+     * compare like the strings they stand for.
+     */
+    public static Object key(Object value) {
+        if (value instanceof Double || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Rope) {
+            return value.toString();
+        }
+        return null;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the slot holding key, or the empty slot where it would go
+    private int slot(Object key, int hash) {
+        int mask = hashes.length - 1;
+        int i = hash & mask;
+        while (true) {
+            Object k = table[2 * i];
+            if (k == null || (hashes[i] == hash && k.equals(key))) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public boolean has(Object key) {
+        return table[2 * slot(key, hash(key))] != null;
+    }
+
+    /**
+     * The value of key, or null when it has none.
+     */
+    public Object get(Object key) {
+        return table[2 * slot(key, hash(key)) + 1];
+    }
+
+    public void put(Object key, Object value) {
+        int hash = hash(key);
+        int i = slot(key, hash);
+        if (table[2 * i] == null) {
+            // kept at most half full, so probe runs stay short
+            if (2 * (size + 1) > hashes.length) {
+                grow();
+                i = slot(key, hash);
+            }
+            table[2 * i] = key;
+            hashes[i] = hash;
+            size++;
+        }
+        table[2 * i + 1] = value;
+    }
+
+    /**
+     * Removes key and returns its value, or null when it had none.
+     */
+    public Object remove(Object key) {
+        int i = slot(key, hash(key));
+        if (table[2 * i] == null) {
+            return null;
+        }
+        Object value = table[2 * i + 1];
+        int mask = hashes.length - 1;
+        // move each following key of the run into the gap when the gap lies between its home slot and it
+        int gap = i;
+        for (int j = (i + 1) & mask; table[2 * j] != null; j = (j + 1) & mask) {
+            int home = hashes[j] & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                table[2 * gap] = table[2 * j];
+                table[2 * gap + 1] = table[2 * j + 1];
+                hashes[gap] = hashes[j];
+                gap = j;
+            }
+        }
+        table[2 * gap] = null;
+        table[2 * gap + 1] = null;
+        size--;
+        return value;
+    }
+
+    private void grow() {
+        Object[] oldTable = table;
+        int[] oldHashes = hashes;
+        table = new Object[2 * oldTable.length];
+        hashes = new int[2 * oldHashes.length];
+        int mask = hashes.length - 1;
+        for (int j = 0; j < oldHashes.length; ++j) {
+            Object key = oldTable[2 * j];
+            if (key != null) {
+                int i = oldHashes[j] & mask;
+                while (table[2 * i] != null) {
+                    i = (i + 1) & mask;
+                }
+                table[2 * i] = key;
+                table[2 * i + 1] = oldTable[2 * j + 1];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+
+    /**
+     * The keys, in table order.
+     */
+    public Object[] keys() {
+        Object[] keys = new Object[size];
+        int n = 0;
+        for (int i = 0; i < hashes.length; ++i) {
+            if (table[2 * i] != null) {
+                keys[n++] = table[2 * i];
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,93 @@
+package com.probe;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+/**
+ * Runs Probe scripts for Java code. A script evaluated directly is parsed on every call, so one that runs again
+ * and again should be {@link #compile compiled} once and the {@link CompiledScript} kept.
+ * <p>
+ * The names in the engine and global scopes are globals of the script, numbers as Probe numbers. The script
+ * cannot change the bindings, and its own globals are gone once it has run. The result of an evaluation is the
+ * value of the script's last statement when that is an expression, and null otherwise.
+ * <p>
+ * The {@link #FUEL} and {@link #TIMEOUT} attributes of the context limit how long an evaluation may run. A script
+ * that goes past either fails with a {@link ScriptException}.
+ */
+public class ProbeScriptEngine extends AbstractScriptEngine implements Compilable {
+    /**
+     * How many loop iterations and function calls an evaluation may make.
+     */
+    public static final String FUEL = "probe.fuel";
+    /**
+     * How many milliseconds an evaluation may run.
+     */
+    public static final String TIMEOUT = "probe.timeout";
+
+    private final ScriptEngineFactory factory;
+
+    ProbeScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    public ProbeScriptEngine() {
+        this(new ProbeScriptEngineFactory());
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script, context).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        return compile(script, context);
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    private CompiledScript compile(String script, ScriptContext context) throws ScriptException {
+        return new ProbeCompiledScript(this, script, context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringBuilder source = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                source.append(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package com.probe;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+/**
+ * Makes Probe available through {@code javax.script}, as {@code new ScriptEngineManager().getEngineByName("probe")}.
+ */
+public class ProbeScriptEngineFactory implements ScriptEngineFactory {
+    private static final String VERSION = "1.0";
+
+    @Override
+    public String getEngineName() {
+        return "Probe";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return Collections.singletonList("pb");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getNames() {
+        return Arrays.asList("probe", "Probe");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "Probe";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE:
+                return getEngineName();
+            case ScriptEngine.ENGINE_VERSION:
+                return getEngineVersion();
+            case ScriptEngine.NAME:
+                return "probe";
+            case ScriptEngine.LANGUAGE:
+                return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION:
+                return getLanguageVersion();
+            case "THREADING":
+                // every evaluation gets globals of its own and scripts never write to the bindings
+                return "STATELESS";
+        }
+        return null;
+    }
+
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        StringBuilder call = new StringBuilder(m).append('(').append(obj);
+        for (String arg : args) {
+            call.append(", ").append(arg);
+        }
+        return call.append(')').toString();
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "print \"" + toDisplay + "\";";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder();
+        for (String statement : statements) {
+            program.append(statement).append(";\n");
+        }
+        return program.toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new ProbeScriptEngine(this);
+    }
+}
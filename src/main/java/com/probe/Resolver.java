@@ -0,0 +1,356 @@
+package com.probe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binds every variable reference to a (depth, slot) pair so the interpreter never looks names up at runtime.
+ * Scopes here mirror the environments the interpreter creates: one per function call and one per block
+ * that declares something. Names not found in any local scope are globals and get a slot in {@link Globals}.
+ * <p>
+ * Functions are hoisted: once a scope is resolved, the functions it declares are moved to its start, so every
+ * engine defines them before anything else in the scope runs and they can be called above their declaration.
+ */
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    static final int GLOBAL = -1;
+
+    private final Globals globals;
+    private final ErrorReporter reporter;
+    private final List<Map<String, Integer>> scopes = new ArrayList<>();
+    private int functions;
+    private int loops;
+    private boolean hasErrors;
+
+    Resolver(Globals globals, ErrorReporter reporter) {
+        this.globals = globals;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Resolves a script, or the next part of one. Its top-level functions are hoisted within {@code stmts}.
+     */
+    void resolve(List<Stmt> stmts) {
+        resolveAll(stmts);
+        if (scopes.isEmpty()) {
+            hoistDefinitions(stmts, Collections.emptySet());
+        }
+    }
+
+    private void resolveAll(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            resolve(stmt);
+        }
+    }
+
+    boolean isError() {
+        return hasErrors;
+    }
+
+    private void error(Token token, String message) {
+        reporter.report(token, message, ErrorReporter.Mode.COVER);
+        hasErrors = true;
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    private int endScope() {
+        return scopes.remove(scopes.size() - 1).size();
+    }
+
+    // redeclaring a name in the same scope reuses its slot
+    private int declare(String name) {
+        if (scopes.isEmpty()) {
+            return globals.slot(name);
+        }
+        Map<String, Integer> scope = scopes.get(scopes.size() - 1);
+        Integer slot = scope.get(name);
+        if (slot == null) {
+            slot = scope.size();
+            scope.put(name, slot);
+        }
+        return slot;
+    }
+
+    private int depth() {
+        return scopes.isEmpty() ? GLOBAL : 0;
+    }
+
+    // returns {depth, slot}
+    private int[] lookUp(String name) {
+        for (int i = scopes.size() - 1; i >= 0; --i) {
+            Integer slot = scopes.get(i).get(name);
+            if (slot != null) {
+                return new int[]{scopes.size() - 1 - i, slot};
+            }
+        }
+        return new int[]{GLOBAL, globals.slot(name)};
+    }
+
+    private static boolean declaresNames(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            if (stmt instanceof Stmt.Var || stmt instanceof FunctionDeclaration) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // functions declared in a scope can call each other whatever order they are declared in
+    private void hoist(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            if (stmt instanceof FunctionDeclaration) {
+                declare(((FunctionDeclaration) stmt).name.lexeme);
+            }
+        }
+    }
+
+    // moves the functions of a resolved scope ahead of its other statements, keeping their order. A function whose
+    // name is also a parameter or declared again in the scope stays where it is, so the assignments keep their order
+    private static void hoistDefinitions(List<Stmt> stmts, Set<String> parameters) {
+        Map<String, Integer> declarations = new HashMap<>();
+        for (Stmt stmt : stmts) {
+            if (stmt instanceof Stmt.Var) {
+                declarations.merge(((Stmt.Var) stmt).name.lexeme, 1, Integer::sum);
+            } else if (stmt instanceof FunctionDeclaration) {
+                declarations.merge(((FunctionDeclaration) stmt).name.lexeme, 1, Integer::sum);
+            }
+        }
+        List<Stmt> functions = new ArrayList<>();
+        List<Stmt> rest = new ArrayList<>(stmts.size());
+        for (Stmt stmt : stmts) {
+            if (stmt instanceof FunctionDeclaration) {
+                String name = ((FunctionDeclaration) stmt).name.lexeme;
+                if (declarations.get(name) == 1 && !parameters.contains(name)) {
+                    functions.add(stmt);
+                    continue;
+                }
+            }
+            rest.add(stmt);
+        }
+        // only a function that comes after some other statement has to move
+        if (functions.isEmpty() || stmts.indexOf(functions.get(functions.size() - 1)) == functions.size() - 1) {
+            return;
+        }
+        functions.addAll(rest);
+        for (int i = 0; i < functions.size(); ++i) {
+            stmts.set(i, functions.get(i));
+        }
+    }
+
+    // break and return complete inside their own function, a loop around the declaration does not count
+    private void resolveFunction(FunctionDeclaration function) {
+        int enclosingLoops = loops;
+        loops = 0;
+        functions++;
+        beginScope();
+        for (Token parameter : function.parameters) {
+            declare(parameter.lexeme);
+        }
+        hoist(function.body);
+        resolveAll(function.body);
+        function.slots = endScope();
+        Set<String> parameters = new HashSet<>();
+        for (Token parameter : function.parameters) {
+            parameters.add(parameter.lexeme);
+        }
+        hoistDefinitions(function.body, parameters);
+        functions--;
+        loops = enclosingLoops;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        int[] binding = lookUp(expr.name.lexeme);
+        expr.depth = binding[0];
+        expr.slot = binding[1];
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+        int[] binding = lookUp(expr.name.lexeme);
+        expr.depth = binding[0];
+        expr.slot = binding[1];
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+        for (Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr) {
+        for (Expr element : expr.elements) {
+            resolve(element);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitMapExpr(Expr.Map expr) {
+        for (int i = 0; i < expr.keys.size(); ++i) {
+            resolve(expr.keys.get(i));
+            resolve(expr.values.get(i));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        resolve(expr.arr);
+        resolve(expr.pos);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexAssignExpr(Expr.IndexAssign expr) {
+        resolve(expr.arr);
+        resolve(expr.pos);
+        resolve(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionExpr(FunctionDeclaration expr) {
+        resolveFunction(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStatement(Stmt.Var stmt) {
+        // the initializer still sees the outer binding of the name, as it did with dynamic lookup
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+        stmt.depth = depth();
+        stmt.slot = declare(stmt.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStatement(Stmt.Print stmt) {
+        resolve(stmt.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.then);
+        if (stmt.alternative != null) {
+            resolve(stmt.alternative);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(Stmt.While stmt) {
+        resolve(stmt.condition);
+        loops++;
+        resolve(stmt.then);
+        loops--;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStatement(Stmt.Expression stmt) {
+        resolve(stmt.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(Stmt.Return stmt) {
+        if (functions == 0) {
+            error(stmt.token, "return outside of a function");
+        }
+        if (stmt.expr != null) {
+            resolve(stmt.expr);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(Stmt.Block stmt) {
+        // blocks without declarations run in the enclosing environment, e.g. the body of a desugared for loop
+        if (!declaresNames(stmt.statements)) {
+            stmt.slots = 0;
+            resolveAll(stmt.statements);
+            return null;
+        }
+        beginScope();
+        hoist(stmt.statements);
+        resolveAll(stmt.statements);
+        stmt.slots = endScope();
+        hoistDefinitions(stmt.statements, Collections.emptySet());
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStatement(FunctionDeclaration stmt) {
+        // declared before the body so the function can call itself, and already hoisted in a local scope
+        stmt.depth = depth();
+        stmt.slot = declare(stmt.name.lexeme);
+        resolveFunction(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        if (loops == 0) {
+            error(stmt.token, "break outside of a loop");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,109 @@
+package com.probe;
+
+import java.util.ArrayDeque;
+
+/**
+ * A string value made by concatenation, kept as its two halves until its characters are needed. Concatenating is
+ * O(1), and the rope is flattened into a {@link String} once, the first time it is indexed, compared or printed.
+ * Probe treats a rope exactly like the string it stands for.
+ * <p>
+ * Results shorter than {@link #FLAT} are plain strings, and a short piece appended to a rope is merged into the
+ * rope's right half while that stays short, so building a string a piece at a time makes a node per
+ * {@code FLAT} characters rather than one per piece.
+ */
+public final class Rope implements CharSequence {
+    static final int FLAT = 256;
+
+    // both null once flattened
+    private CharSequence left;
+    private CharSequence right;
+    private final int length;
+    private volatile String flat;
+
+    private Rope(CharSequence left, CharSequence right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    /**
+     * Concatenates two string values, each a {@link String} or a rope.
+     */
+    public static CharSequence concat(CharSequence left, CharSequence right) {
+        int length = left.length() + right.length();
+        if (length < FLAT) {
+            return left.toString() + right;
+        }
+        if (left instanceof Rope && right.length() < FLAT) {
+            Rope rope = (Rope) left;
+            if (rope.flat == null) {
+                CharSequence first = rope.left;
+                CharSequence last = rope.right;
+                // pieces shorter than FLAT are always strings
+                if (first != null && last != null && last.length() + right.length() < FLAT) {
+                    return new Rope(first, last.toString() + right, length);
+                }
+            }
+        }
+        return new Rope(left, right, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String s = flat;
+        return s != null ? s : flatten();
+    }
+
+    // ropes built a piece at a time are as deep as they are long, so this walks them without recursing
+    private synchronized String flatten() {
+        if (flat != null) {
+            return flat;
+        }
+        char[] chars = new char[length];
+        int end = length;
+        ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence piece = pending.pop();
+            if (piece instanceof Rope && piece != this) {
+                Rope rope = (Rope) piece;
+                CharSequence first = rope.left;
+                CharSequence last = rope.right;
+                if (rope.flat != null || first == null || last == null) {
+                    piece = rope.toString();
+                } else {
+                    pending.push(first);
+                    pending.push(last);
+                    continue;
+                }
+            } else if (piece == this) {
+                pending.push(left);
+                pending.push(right);
+                continue;
+            }
+            // filled from the end, so the right half, which comes off first, goes last
+            String s = piece.toString();
+            end -= s.length();
+            s.getChars(0, s.length(), chars, end);
+        }
+        flat = new String(chars);
+        left = null;
+        right = null;
+        return flat;
+    }
+}
@@ -1,6 +1,6 @@
 package com.probe;
 
-class RuntimeError extends RuntimeException {
+public class RuntimeError extends RuntimeException {
     final Token token;
     final ErrorReporter.Mode mode;
 
@@ -9,4 +9,12 @@ class RuntimeError extends RuntimeException {
         this.token = token;
         this.mode = mode;
     }
+
+    public Token getToken() {
+        return token;
+    }
+
+    public ErrorReporter.Mode getMode() {
+        return mode;
+    }
 }
@@ -0,0 +1,626 @@
+package com.probe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the optimized tree of every script it is given in a directory, so a script that did not change is read
+ * back instead of being lexed, parsed and optimized again. Entries are named after a hash of the source, the cache
+ * format and the Probe version, so an edited script or a new release simply misses. An entry that cannot be read
+ * back for any reason is a miss as well. Entries are written to a temporary file first and moved into place, so
+ * concurrent runs never see half of one.
+ * <p>
+ * Trees are cached before they are resolved, because global slots depend on what else a run defines; resolving is a
+ * single cheap pass over the loaded tree.
+ */
+final class ScriptCache {
+    /**
+     * Bumped whenever the tree or its encoding changes.
+     */
+    static final int FORMAT = 4;
+    private static final int MAGIC = 0x50524243;
+    private static final String VERSION = version();
+
+    private static final int NULL = 0;
+    // expressions
+    private static final int LITERAL = 1;
+    private static final int BINARY = 2;
+    private static final int UNARY = 3;
+    private static final int VARIABLE = 4;
+    private static final int GROUPING = 5;
+    private static final int ASSIGN = 6;
+    private static final int LOGICAL = 7;
+    private static final int CALL = 8;
+    private static final int ARRAY = 9;
+    private static final int INDEX = 10;
+    private static final int FUNCTION = 11;
+    private static final int INDEX_ASSIGN = 12;
+    private static final int MAP = 13;
+    // statements
+    private static final int VAR = 20;
+    private static final int PRINT = 21;
+    private static final int IF = 22;
+    private static final int WHILE = 23;
+    private static final int EXPRESSION = 24;
+    private static final int RETURN = 25;
+    private static final int BLOCK = 26;
+    private static final int BREAK = 27;
+    // literal values
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final Path directory;
+
+    ScriptCache(Path directory) {
+        this.directory = directory;
+    }
+
+    private static String version() {
+        String version = Probe.class.getPackage().getImplementationVersion();
+        return version != null ? version : "dev";
+    }
+
+    /**
+     * The tree stored for {@code source}, or null when there is none that can be used.
+     */
+    List<Stmt> load(CharSequence source) {
+        Path entry = entry(source);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || !in.readUTF().equals(VERSION)
+                    || in.readInt() != source.length()) {
+                return null;
+            }
+            return new Reader(in).statements();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // a damaged entry is rewritten by the next store
+            return null;
+        }
+    }
+
+    /**
+     * Stores the tree parsed from {@code source}. Failing to write only means the next run parses again.
+     */
+    void store(CharSequence source, List<Stmt> stmts) {
+        Path entry = entry(source);
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(VERSION);
+                out.writeInt(source.length());
+                new Writer(out).statements(stmts);
+            }
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private Path entry(CharSequence source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((FORMAT + ":" + VERSION + ":").getBytes(StandardCharsets.UTF_8));
+        byte[] chunk = new byte[8192];
+        int used = 0;
+        for (int i = 0; i < source.length(); ++i) {
+            char c = source.charAt(i);
+            chunk[used++] = (byte) (c >> 8);
+            chunk[used++] = (byte) c;
+            if (used == chunk.length) {
+                digest.update(chunk, 0, used);
+                used = 0;
+            }
+        }
+        digest.update(chunk, 0, used);
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest.digest()) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return directory.resolve(name.append(".pbc").toString());
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed number");
+    }
+
+    /**
+     * Writes a tree as tagged nodes. Numbers are variable length and every string is written once, later uses
+     * refer back to it.
+     */
+    private static final class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void statements(List<Stmt> stmts) throws IOException {
+            try {
+                stmts(stmts);
+            } catch (Failure e) {
+                throw (IOException) e.getCause();
+            }
+        }
+
+        private void expr(Expr expr) {
+            if (expr == null) {
+                tag(NULL);
+            } else {
+                expr.accept(this);
+            }
+        }
+
+        private void exprs(List<Expr> exprs) {
+            number(exprs.size());
+            for (Expr expr : exprs) {
+                expr(expr);
+            }
+        }
+
+        private void stmts(List<Stmt> stmts) {
+            number(stmts.size());
+            for (Stmt stmt : stmts) {
+                stmt.accept(this);
+            }
+        }
+
+        private void token(Token token) {
+            if (token == null) {
+                tag(NULL);
+                return;
+            }
+            tag(token.type.ordinal() + 1);
+            string(token.lexeme);
+            number(token.line);
+            number(token.column);
+        }
+
+        private void string(String value) {
+            Integer index = strings.get(value);
+            if (index != null) {
+                number(index + 1);
+                return;
+            }
+            strings.put(value, strings.size());
+            number(0);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            number(bytes.length);
+            try {
+                out.write(bytes);
+            } catch (IOException e) {
+                throw new Failure(e);
+            }
+        }
+
+        private void tag(int tag) {
+            try {
+                out.write(tag);
+            } catch (IOException e) {
+                throw new Failure(e);
+            }
+        }
+
+        private void number(int value) {
+            try {
+                writeInt(out, value);
+            } catch (IOException e) {
+                throw new Failure(e);
+            }
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            tag(LITERAL);
+            Object value = expr.value;
+            if (value == null) {
+                tag(NULL);
+            } else if (value instanceof Boolean) {
+                tag((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                tag(NUMBER);
+                try {
+                    out.writeDouble((double) value);
+                } catch (IOException e) {
+                    throw new Failure(e);
+                }
+            } else if (value instanceof String) {
+                tag(STRING);
+                string((String) value);
+            } else {
+                throw new IllegalArgumentException("cannot cache the literal " + value);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            tag(BINARY);
+            expr(expr.left);
+            token(expr.operator);
+            expr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            tag(UNARY);
+            token(expr.operator);
+            expr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            tag(VARIABLE);
+            token(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            tag(GROUPING);
+            expr(expr.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            tag(ASSIGN);
+            token(expr.name);
+            expr(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            tag(LOGICAL);
+            expr(expr.left);
+            token(expr.operator);
+            expr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            tag(CALL);
+            expr(expr.callee);
+            exprs(expr.arguments);
+            token(expr.rightParen);
+            return null;
+        }
+
+        @Override
+        public Void visitArrayExpr(Expr.Array expr) {
+            tag(ARRAY);
+            exprs(expr.elements);
+            return null;
+        }
+
+        @Override
+        public Void visitMapExpr(Expr.Map expr) {
+            tag(MAP);
+            token(expr.leftBrace);
+            exprs(expr.keys);
+            exprs(expr.values);
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Expr.Index expr) {
+            tag(INDEX);
+            expr(expr.arr);
+            expr(expr.pos);
+            token(expr.leftSquare);
+            return null;
+        }
+
+        @Override
+        public Void visitIndexAssignExpr(Expr.IndexAssign expr) {
+            tag(INDEX_ASSIGN);
+            expr(expr.arr);
+            expr(expr.pos);
+            token(expr.leftSquare);
+            expr(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionExpr(FunctionDeclaration expr) {
+            tag(FUNCTION);
+            token(expr.keyword);
+            token(expr.name);
+            number(expr.parameters.size());
+            for (Token parameter : expr.parameters) {
+                token(parameter);
+            }
+            stmts(expr.body);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStatement(Stmt.Var stmt) {
+            tag(VAR);
+            token(stmt.name);
+            expr(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStatement(Stmt.Print stmt) {
+            tag(PRINT);
+            expr(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStatement(Stmt.If stmt) {
+            tag(IF);
+            expr(stmt.condition);
+            stmt.then.accept(this);
+            if (stmt.alternative == null) {
+                tag(NULL);
+            } else {
+                stmt.alternative.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStatement(Stmt.While stmt) {
+            tag(WHILE);
+            token(stmt.keyword);
+            expr(stmt.condition);
+            stmt.then.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStatement(Stmt.Expression stmt) {
+            tag(EXPRESSION);
+            expr(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStatement(Stmt.Return stmt) {
+            tag(RETURN);
+            token(stmt.token);
+            expr(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStatement(Stmt.Block stmt) {
+            tag(BLOCK);
+            stmts(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStatement(FunctionDeclaration stmt) {
+            return visitFunctionExpr(stmt);
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            tag(BREAK);
+            token(stmt.token);
+            return null;
+        }
+    }
+
+    // carries an IOException out of a visitor
+    private static final class Failure extends RuntimeException {
+        Failure(IOException cause) {
+            super(cause);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        List<Stmt> statements() throws IOException {
+            List<Stmt> stmts = stmts();
+            if (in.read() != -1) {
+                throw new IOException("trailing bytes");
+            }
+            return stmts;
+        }
+
+        private List<Stmt> stmts() throws IOException {
+            int count = readInt(in);
+            List<Stmt> stmts = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; ++i) {
+                stmts.add(stmt(in.readUnsignedByte()));
+            }
+            return stmts;
+        }
+
+        private List<Expr> exprs() throws IOException {
+            int count = readInt(in);
+            List<Expr> exprs = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; ++i) {
+                exprs.add(expr());
+            }
+            return exprs;
+        }
+
+        private Stmt stmt(int tag) throws IOException {
+            switch (tag) {
+                case NULL:
+                    return null;
+                case VAR:
+                    return new Stmt.Var(token(), expr());
+                case PRINT:
+                    return new Stmt.Print(expr());
+                case IF:
+                    return new Stmt.If(expr(), stmt(in.readUnsignedByte()), stmt(in.readUnsignedByte()));
+                case WHILE:
+                    return new Stmt.While(token(), expr(), stmt(in.readUnsignedByte()));
+                case EXPRESSION:
+                    return new Stmt.Expression(expr());
+                case RETURN:
+                    return new Stmt.Return(token(), expr());
+                case BLOCK:
+                    return new Stmt.Block(stmts());
+                case BREAK:
+                    return new Stmt.Break(token());
+                case FUNCTION:
+                    return function();
+            }
+            throw new IOException("unknown statement " + tag);
+        }
+
+        private Expr expr() throws IOException {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case LITERAL:
+                    return new Expr.Literal(literal());
+                case BINARY:
+                    return new Expr.Binary(expr(), token(), expr());
+                case UNARY:
+                    return new Expr.Unary(token(), expr());
+                case VARIABLE:
+                    return new Expr.Variable(token());
+                case GROUPING:
+                    return new Expr.Grouping(expr());
+                case ASSIGN:
+                    return new Expr.Assign(token(), expr());
+                case LOGICAL:
+                    return new Expr.Logical(expr(), token(), expr());
+                case CALL:
+                    return new Expr.Call(expr(), exprs(), token());
+                case ARRAY:
+                    return new Expr.Array(exprs());
+                case INDEX:
+                    return new Expr.Index(expr(), expr(), token());
+                case MAP:
+                    return new Expr.Map(token(), exprs(), exprs());
+                case INDEX_ASSIGN:
+                    return new Expr.IndexAssign(expr(), expr(), token(), expr());
+                case FUNCTION:
+                    return function();
+            }
+            throw new IOException("unknown expression " + tag);
+        }
+
+        private FunctionDeclaration function() throws IOException {
+            Token keyword = token();
+            Token name = token();
+            int count = readInt(in);
+            List<Token> parameters = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; ++i) {
+                parameters.add(token());
+            }
+            return new FunctionDeclaration(keyword, name, parameters, stmts());
+        }
+
+        private Object literal() throws IOException {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return false;
+                case TRUE:
+                    return true;
+                case NUMBER:
+                    return in.readDouble();
+                case STRING:
+                    return string();
+            }
+            throw new IOException("unknown literal " + tag);
+        }
+
+        private Token token() throws IOException {
+            int tag = in.readUnsignedByte();
+            if (tag == NULL) {
+                return null;
+            }
+            TokenType type = TOKEN_TYPES[tag - 1];
+            String lexeme = string();
+            int line = readInt(in);
+            int column = readInt(in);
+            return new Token(type, lexeme, null, line, column);
+        }
+
+        private String string() throws IOException {
+            int index = readInt(in);
+            if (index > 0) {
+                return strings.get(index - 1);
+            }
+            byte[] bytes = new byte[readInt(in)];
+            in.readFully(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+    }
+}
@@ -28,6 +28,8 @@ public interface Stmt {
     class Var implements Stmt {
         final Token name;
         final Expr initializer;
+        int depth;
+        int slot;
 
         public Var(Token name, Expr initializer) {
             this.name = name;
@@ -80,10 +82,16 @@ public interface Stmt {
     }
 
     class While implements Stmt {
+        // the while or for, where running out of fuel is reported
+        final Token keyword;
         final Expr condition;
         final Stmt then;
+        // counted without synchronization, see Interpreter.fork
+        int backEdges;
+        volatile CompiledLoop compiled;
 
-        public While(Expr condition, Stmt then) {
+        public While(Token keyword, Expr condition, Stmt then) {
+            this.keyword = keyword;
             this.condition = condition;
             this.then = then;
         }
@@ -108,9 +116,11 @@ public interface Stmt {
     }
 
     class Return implements Stmt {
+        final Token token;
         final Expr expr;
 
-        public Return(Expr expr) {
+        public Return(Token returnToken, Expr expr) {
+            this.token = returnToken;
             this.expr = expr;
         }
 
@@ -122,6 +132,7 @@ public interface Stmt {
 
     class Block implements Stmt {
         final List<Stmt> statements;
+        int slots;
 
         public Block(List<Stmt> stmts) {
             this.statements = stmts;
@@ -0,0 +1,18 @@
+package com.probe;
+
+import java.util.List;
+
+/**
+ * A call in tail position that has not been made yet. A function returns one in place of the call's result and
+ * {@link ProbeFunction#call} makes the call once the function's own frames are gone, so a chain of tail calls runs
+ * in constant stack.
+ */
+final class TailCall {
+    final ProbeFunction function;
+    final List<Object> arguments;
+
+    TailCall(ProbeFunction function, List<Object> arguments) {
+        this.function = function;
+        this.arguments = arguments;
+    }
+}
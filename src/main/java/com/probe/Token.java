@@ -16,6 +16,10 @@ public final class Token {
         this.column = column;
     }
 
+    public String getLexeme() {
+        return lexeme;
+    }
+
     @Override
     public String toString() {
         return "Token{" +
@@ -0,0 +1,136 @@
+package com.probe;
+
+import java.util.Arrays;
+
+/**
+ * The tokens of a source as parallel arrays of offsets into it. Lexemes and literal values are only cut out of
+ * the source when asked for, and {@link #token} builds a {@link Token} for the few the tree keeps.
+ * <p>
+ * A stream fed by a {@link Lexer} scans tokens as they are asked for, and {@link #release} drops the ones the
+ * parser is done with. Positions count from the start of the source either way.
+ */
+final class TokenStream {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final CharSequence source;
+    private Lexer lexer;
+    // position of the first token still held
+    private int base;
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] columns;
+    private int size;
+
+    TokenStream(CharSequence source, int capacity) {
+        this.source = source;
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+    }
+
+    /**
+     * Has {@code lexer} scan the rest of the tokens as they are asked for.
+     */
+    void feed(Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    /**
+     * Forgets the tokens before {@code index}, which must not be asked for again.
+     */
+    void release(int index) {
+        int count = index - base;
+        if (count > 0) {
+            size -= count;
+            System.arraycopy(types, count, types, 0, size);
+            System.arraycopy(starts, count, starts, 0, size);
+            System.arraycopy(lengths, count, lengths, 0, size);
+            System.arraycopy(lines, count, lines, 0, size);
+            System.arraycopy(columns, count, columns, 0, size);
+            base = index;
+        }
+    }
+
+    void add(TokenType type, int start, int length, int line, int column) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        columns[size] = column;
+        size++;
+    }
+
+    /**
+     * The position after the last token scanned so far.
+     */
+    int end() {
+        return base + size;
+    }
+
+    // where the token at a position is held, scanning up to it first, which can replace the arrays
+    private int at(int index) {
+        while (index >= base + size && lexer != null) {
+            if (!lexer.scanNext()) {
+                lexer = null;
+            }
+        }
+        return index - base;
+    }
+
+    TokenType type(int index) {
+        int i = at(index);
+        return TYPES[types[i]];
+    }
+
+    int line(int index) {
+        int i = at(index);
+        return lines[i];
+    }
+
+    int column(int index) {
+        int i = at(index);
+        return columns[i];
+    }
+
+    int length(int index) {
+        int i = at(index);
+        return lengths[i];
+    }
+
+    String lexeme(int index) {
+        int i = at(index);
+        return source.subSequence(starts[i], starts[i] + lengths[i]).toString();
+    }
+
+    /**
+     * The number a NUMBER token stands for, the contents of a STRING token without its quotes and null for
+     * everything else.
+     */
+    Object value(int index) {
+        switch (type(index)) {
+            case NUMBER:
+                return Double.parseDouble(lexeme(index));
+            case STRING:
+                int i = at(index);
+                return source.subSequence(starts[i] + 1, starts[i] + lengths[i] - 1).toString();
+            default:
+                return null;
+        }
+    }
+
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), value(index), line(index), column(index));
+    }
+}
@@ -4,7 +4,7 @@ public enum TokenType {
     // Single-character tokens.
     LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE,
     COMMA, DOT, MINUS, PLUS, SEMICOLON, SLASH, STAR,
-    LEFT_SQUARE, RIGHT_SQUARE,
+    LEFT_SQUARE, RIGHT_SQUARE, COLON,
 
     // One or two character tokens.
     BANG, BANG_EQUAL,
@@ -0,0 +1,130 @@
+package com.probe;
+
+/**
+ * Executable form of an {@link Expr.Unary}, specialized the same way as {@link BinaryNode}.
+ */
+abstract class UnaryNode {
+    final Expr.Unary expr;
+
+    UnaryNode(Expr.Unary expr) {
+        this.expr = expr;
+    }
+
+    static UnaryNode create(Expr.Unary expr) {
+        return new Uninitialized(expr);
+    }
+
+    abstract Object execute(Interpreter interpreter);
+
+    double executeDouble(Interpreter interpreter) throws UnexpectedResultException {
+        return BinaryNode.expectDouble(execute(interpreter));
+    }
+
+    boolean producesDouble() {
+        return false;
+    }
+
+    abstract Object executeWith(Object value);
+
+    final Object rewrite(UnaryNode node, Object value) {
+        expr.node = node;
+        return node.executeWith(value);
+    }
+
+    private static final class Uninitialized extends UnaryNode {
+        Uninitialized(Expr.Unary expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            return executeWith(interpreter.eval(expr.right));
+        }
+
+        @Override
+        Object executeWith(Object value) {
+            switch (expr.operator.type) {
+                case MINUS:
+                    return rewrite(value instanceof Double ? new Negate(expr) : new Generic(expr), value);
+                case BANG:
+                    return rewrite(new Not(expr), value);
+            }
+            return rewrite(new Generic(expr), value);
+        }
+    }
+
+    private static final class Negate extends UnaryNode {
+        Negate(Expr.Unary expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            try {
+                return -interpreter.evalDouble(expr.right);
+            } catch (UnexpectedResultException e) {
+                return rewrite(new Generic(expr), e.result);
+            }
+        }
+
+        @Override
+        double executeDouble(Interpreter interpreter) throws UnexpectedResultException {
+            try {
+                return -interpreter.evalDouble(expr.right);
+            } catch (UnexpectedResultException e) {
+                return BinaryNode.expectDouble(rewrite(new Generic(expr), e.result));
+            }
+        }
+
+        @Override
+        boolean producesDouble() {
+            return true;
+        }
+
+        @Override
+        Object executeWith(Object value) {
+            if (value instanceof Double) {
+                return -(double) value;
+            }
+            return rewrite(new Generic(expr), value);
+        }
+    }
+
+    private static final class Not extends UnaryNode {
+        Not(Expr.Unary expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            return executeWith(interpreter.eval(expr.right));
+        }
+
+        @Override
+        Object executeWith(Object value) {
+            return !Values.isTrue(value);
+        }
+    }
+
+    private static final class Generic extends UnaryNode {
+        Generic(Expr.Unary expr) {
+            super(expr);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            return executeWith(interpreter.eval(expr.right));
+        }
+
+        @Override
+        Object executeWith(Object value) {
+            switch (expr.operator.type) {
+                case MINUS:
+                    return -(double) value;
+                case BANG:
+                    return !Values.isTrue(value);
+            }
+            return null;
+        }
+    }
+}
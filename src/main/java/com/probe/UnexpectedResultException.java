@@ -0,0 +1,14 @@
+package com.probe;
+
+/**
+ * Thrown by a primitive evaluation path when the value turns out not to be of the expected type.
+ * Carries the value so the caller can continue generically without evaluating anything twice.
+ */
+class UnexpectedResultException extends Exception {
+    final Object result;
+
+    UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
@@ -0,0 +1,151 @@
+package com.probe;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import com.probe.builtin.Expose;
+
+/**
+ * Value semantics shared by every execution engine: truthiness, equality, indexing and how values print.
+ */
+public final class Values {
+
+    private Values() {
+    }
+
+    public static boolean isTrue(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (Boolean) value;
+        return true;
+    }
+
+    /**
+     * Whether a value is a string, which is either a {@link String} or a {@link Rope}.
+     */
+    public static boolean isString(Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    public static Object concat(Object left, Object right) {
+        return Rope.concat((CharSequence) left, (CharSequence) right);
+    }
+
+    public static boolean isEqual(Object a, Object b) {
+        if (a instanceof Rope) a = a.toString();
+        if (b instanceof Rope) b = b.toString();
+        return (a == null && b == null) || (a != null && a.equals(b));
+    }
+
+    public static Object index(Object arr, Object pos, Token leftSquare) {
+        if (arr instanceof ProbeMap) {
+            return ((ProbeMap) arr).get(mapKey(pos, leftSquare));
+        }
+        if (!(arr instanceof ProbeArray) && !isString(arr)) {
+            throw new RuntimeError(leftSquare, "expected array, map or string here", ErrorReporter.Mode.COVER);
+        }
+        double val = (double) pos;
+        if (arr instanceof ProbeArray) {
+            if (val != (int) val) {
+                throw new RuntimeError(leftSquare, "index has to been an integer", ErrorReporter.Mode.COVER);
+            }
+            ProbeArray array = (ProbeArray) arr;
+            if (val < 0 || val >= array.size()) {
+                throw new RuntimeError(leftSquare, "index out of range", ErrorReporter.Mode.COVER);
+            }
+            return array.get((int) val);
+        }
+        if (val != (int) val) {
+            throw new RuntimeError(leftSquare, "index has to been an integer", ErrorReporter.Mode.END);
+        }
+        return ((CharSequence) arr).charAt((int) val);
+    }
+
+    public static Object setIndex(Object arr, Object pos, Object value, Token leftSquare) {
+        if (arr instanceof ProbeMap) {
+            ((ProbeMap) arr).put(mapKey(pos, leftSquare), value);
+            return value;
+        }
+        if (!(arr instanceof ProbeArray)) {
+            throw new RuntimeError(leftSquare, "expected array or map here", ErrorReporter.Mode.COVER);
+        }
+        double val = (double) pos;
+        if (val != (int) val) {
+            throw new RuntimeError(leftSquare, "index has to been an integer", ErrorReporter.Mode.COVER);
+        }
+        ProbeArray array = (ProbeArray) arr;
+        if (val < 0 || val >= array.size()) {
+            throw new RuntimeError(leftSquare, "index out of range", ErrorReporter.Mode.COVER);
+        }
+        array.set((int) val, value);
+        return value;
+    }
+
+    private static Object mapKey(Object pos, Token leftSquare) {
+        Object key = ProbeMap.key(pos);
+        if (key == null) {
+            throw new RuntimeError(leftSquare, "map keys have to be strings or numbers", ErrorReporter.Mode.COVER);
+        }
+        return key;
+    }
+
+    public static String stringify(Object obj) {
+        return stringify(obj, null);
+    }
+
+    // enclosing holds the arrays and maps being printed around obj, so one that contains itself prints as [...]
+    private static String stringify(Object obj, Set<Object> enclosing) {
+        if (obj == null) return "nil";
+        if (obj instanceof ProbeArray || obj instanceof ProbeMap) {
+            if (enclosing == null) {
+                enclosing = Collections.newSetFromMap(new IdentityHashMap<>());
+            }
+            if (!enclosing.add(obj)) {
+                return obj instanceof ProbeArray ? "[...]" : "{...}";
+            }
+            try {
+                return obj instanceof ProbeArray
+                        ? stringify((ProbeArray) obj, enclosing) : stringify((ProbeMap) obj, enclosing);
+            } finally {
+                enclosing.remove(obj);
+            }
+        }
+        Expose expose = obj.getClass().getAnnotation(Expose.class);
+        if (expose != null) {
+            return "<fn " + expose.value() + ">";
+        }
+
+        String value = obj.toString();
+        if (value.endsWith(".0")) {
+            return value.substring(0, value.length() - 2);
+        }
+        return obj.toString();
+    }
+
+    private static String stringify(ProbeArray array, Set<Object> enclosing) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("[");
+        for (int i = 0; i < array.size(); ++i) {
+            builder.append(stringify(array.get(i), enclosing));
+            if (i < array.size() - 1) {
+                builder.append(", ");
+            }
+        }
+        builder.append("]");
+        return builder.toString();
+    }
+
+    private static String stringify(ProbeMap map, Set<Object> enclosing) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{");
+        Object[] keys = map.keys();
+        for (int i = 0; i < keys.length; ++i) {
+            builder.append(stringify(keys[i], enclosing)).append(": ").append(stringify(map.get(keys[i]), enclosing));
+            if (i < keys.length - 1) {
+                builder.append(", ");
+            }
+        }
+        builder.append("}");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+
+/**
+ * {@code await(task)}: waits for a task to finish and returns what its function returned.
+ */
+@Expose("await")
+public class Await implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof Task) {
+            return ((Task) obj).await();
+        }
+        throw new ExecutionException("Expected task");
+    }
+
+    @Override
+    public int parameters() {
+        return 1;
+    }
+}
@@ -1,27 +1,49 @@
 package com.probe.builtin;
 
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import com.probe.Callable;
 
+/**
+ * The functions every script starts with. The map is filled once and never changes, so interpreters on any
+ * number of threads can read it.
+ */
 public class BuiltIns {
-    public static Map<String, Callable> callables = new HashMap<>();
+    public static final Map<String, Callable> callables;
 
     static {
-        register(Len.class, new Len());
-        register(Set.class, new Set());
+        Map<String, Callable> builtIns = new HashMap<>();
+        register(builtIns, Len.class, new Len());
+        register(builtIns, Set.class, new Set());
+        register(builtIns, Push.class, new Push());
+        register(builtIns, Pop.class, new Pop());
+        register(builtIns, Keys.class, new Keys());
+        register(builtIns, Has.class, new Has());
+        register(builtIns, Remove.class, new Remove());
+        register(builtIns, Memo.class, new Memo());
+        register(builtIns, MemoStats.class, new MemoStats());
+        register(builtIns, PMap.class, new PMap());
+        register(builtIns, PFilter.class, new PFilter());
+        register(builtIns, PReduce.class, new PReduce());
+        register(builtIns, Spawn.class, new Spawn());
+        register(builtIns, Await.class, new Await());
+        register(builtIns, NewChannel.class, new NewChannel());
+        register(builtIns, Send.class, new Send());
+        register(builtIns, Recv.class, new Recv());
+        callables = Collections.unmodifiableMap(builtIns);
     }
 
-    static <T extends Callable> void register(Class<T> aClass, T instance) {
+    static <T extends Callable> void register(Map<String, Callable> builtIns, Class<T> aClass, T instance) {
 
         if (!aClass.isAnnotationPresent(Expose.class)) {
             throw new RuntimeException(aClass.getSimpleName() + " does not have Expose annotation");
         }
 
         Expose expose = aClass.getAnnotation(Expose.class);
-        callables.put(expose.value(), instance);
+        builtIns.put(expose.value(), instance);
 
     }
 }
@@ -0,0 +1,110 @@
+package com.probe.builtin;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A bounded first-in first-out queue between tasks, made by {@code channel(n)}. {@code send} waits while the
+ * channel holds n values and {@code recv} waits while it is empty. Any value can be sent, nil included.
+ */
+public final class Channel {
+    private final Object[] buffer;
+    private int head;
+    private int count;
+
+    Channel(int capacity) {
+        buffer = new Object[capacity];
+    }
+
+    private synchronized boolean offer(Object value) {
+        if (count == buffer.length) {
+            return false;
+        }
+        buffer[(head + count) % buffer.length] = value;
+        count++;
+        notifyAll();
+        return true;
+    }
+
+    private synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    private synchronized Object poll() {
+        Object value = buffer[head];
+        buffer[head] = null;
+        head = (head + 1) % buffer.length;
+        count--;
+        notifyAll();
+        return value;
+    }
+
+    void send(final Object value) {
+        block(new ForkJoinPool.ManagedBlocker() {
+            private boolean sent;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                synchronized (Channel.this) {
+                    while (!offer(value)) {
+                        Channel.this.wait();
+                    }
+                }
+                sent = true;
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return sent || (sent = offer(value));
+            }
+        });
+    }
+
+    Object recv() {
+        final Object[] received = new Object[1];
+        block(new ForkJoinPool.ManagedBlocker() {
+            private boolean done;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                synchronized (Channel.this) {
+                    while (isEmpty()) {
+                        Channel.this.wait();
+                    }
+                    received[0] = poll();
+                }
+                done = true;
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (!done) {
+                    synchronized (Channel.this) {
+                        if (!isEmpty()) {
+                            received[0] = poll();
+                            done = true;
+                        }
+                    }
+                }
+                return done;
+            }
+        });
+        return received[0];
+    }
+
+    // waits through the pool, so a task waiting here does not hold a worker the other tasks need
+    private static void block(ForkJoinPool.ManagedBlocker blocker) {
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException("Interrupted while waiting on a channel");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
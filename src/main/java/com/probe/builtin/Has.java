@@ -0,0 +1,26 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeMap;
+
+@Expose("has")
+public class Has implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof ProbeMap) {
+            Object key = ProbeMap.key(arguments.get(1));
+            return key != null && ((ProbeMap) obj).has(key);
+        }
+        throw new ExecutionException("Expected map");
+    }
+
+    @Override
+    public int parameters() {
+        return 2;
+    }
+}
@@ -0,0 +1,26 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeArray;
+import com.probe.ProbeMap;
+
+@Expose("keys")
+public class Keys implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof ProbeMap) {
+            return new ProbeArray(((ProbeMap) obj).keys());
+        }
+        throw new ExecutionException("Expected map");
+    }
+
+    @Override
+    public int parameters() {
+        return 1;
+    }
+}
@@ -5,6 +5,8 @@ import java.util.List;
 import com.probe.Callable;
 import com.probe.Interpreter;
 import com.probe.ProbeArray;
+import com.probe.ProbeMap;
+import com.probe.Values;
 
 @Expose("len")
 public class Len implements Callable {
@@ -12,12 +14,14 @@ public class Len implements Callable {
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
         Object obj = arguments.get(0);
-        if (obj instanceof String) {
-            return (double) ((String) obj).length();
+        if (Values.isString(obj)) {
+            return (double) ((CharSequence) obj).length();
         } else if (obj instanceof ProbeArray) {
             return (double) ((ProbeArray) obj).size();
+        } else if (obj instanceof ProbeMap) {
+            return (double) ((ProbeMap) obj).size();
         }
-        throw new ExecutionException("Expected string or array");
+        throw new ExecutionException("Expected string, array or map");
     }
 
     @Override
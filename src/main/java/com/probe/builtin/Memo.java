@@ -0,0 +1,29 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+
+/**
+ * Wraps a function so that it remembers its results, see {@link Memoized}. Each wrapper keeps at most
+ * {@code probe.memo.capacity} results, 10000 by default.
+ */
+@Expose("memo")
+public class Memo implements Callable {
+    static final int CAPACITY = Integer.getInteger("probe.memo.capacity", 10000);
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof Callable) {
+            return new Memoized((Callable) obj, CAPACITY);
+        }
+        throw new ExecutionException("Expected function");
+    }
+
+    @Override
+    public int parameters() {
+        return 1;
+    }
+}
@@ -0,0 +1,27 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+
+/**
+ * The cache counters of a function made by {@code memo}: a map of its hits, misses and size.
+ */
+@Expose("memostats")
+public class MemoStats implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof Memoized) {
+            return ((Memoized) obj).stats();
+        }
+        throw new ExecutionException("Expected memoized function");
+    }
+
+    @Override
+    public int parameters() {
+        return 1;
+    }
+}
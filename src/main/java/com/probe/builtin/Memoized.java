@@ -0,0 +1,127 @@
+package com.probe.builtin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeArray;
+import com.probe.ProbeMap;
+import com.probe.Rope;
+
+/**
+ * A function wrapped by {@code memo}. Results are cached by the values of the arguments, with arrays compared by
+ * their contents, and the least recently used result is dropped once the cache is full. Calls with a map among
+ * their arguments, which can change without becoming a different value, or an array that contains itself are
+ * passed straight through.
+ */
+class Memoized implements Callable {
+    private static final Object NOT_CACHEABLE = new Object();
+
+    private final Callable target;
+    private final Map<List<Object>, Object> cache;
+    private long hits;
+    private long misses;
+
+    Memoized(Callable target, final int capacity) {
+        this.target = target;
+        this.cache = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        List<Object> key = key(arguments);
+        if (key == null) {
+            return target.call(interpreter, arguments);
+        }
+        synchronized (this) {
+            Object result = cache.get(key);
+            if (result != null || cache.containsKey(key)) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        // not held across the call, which may well come back here
+        Object result = target.call(interpreter, arguments);
+        synchronized (this) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    // the arguments as values that compare by content, or null when they cannot be cached
+    private static List<Object> key(List<Object> values) {
+        Object[] key = new Object[values.size()];
+        for (int i = 0; i < key.length; ++i) {
+            Object value = key(values.get(i), null);
+            if (value == NOT_CACHEABLE) {
+                return null;
+            }
+            key[i] = value;
+        }
+        return Arrays.asList(key);
+    }
+
+    // enclosing holds the arrays around value; an array that contains itself has no key made of its contents
+    private static Object key(Object value, Set<Object> enclosing) {
+        if (value instanceof Rope) {
+            return value.toString();
+        }
+        if (value instanceof ProbeMap) {
+            return NOT_CACHEABLE;
+        }
+        if (value instanceof ProbeArray) {
+            ProbeArray array = (ProbeArray) value;
+            if (enclosing == null) {
+                enclosing = Collections.newSetFromMap(new IdentityHashMap<>());
+            }
+            if (!enclosing.add(array)) {
+                return NOT_CACHEABLE;
+            }
+            List<Object> elements = new ArrayList<>(array.size());
+            for (int i = 0; i < array.size(); ++i) {
+                Object element = key(array.get(i), enclosing);
+                if (element == NOT_CACHEABLE) {
+                    return NOT_CACHEABLE;
+                }
+                elements.add(element);
+            }
+            enclosing.remove(array);
+            return elements;
+        }
+        return value;
+    }
+
+    /**
+     * Hits, misses and the number of cached results, as a map.
+     */
+    synchronized ProbeMap stats() {
+        ProbeMap stats = new ProbeMap();
+        stats.put("hits", (double) hits);
+        stats.put("misses", (double) misses);
+        stats.put("size", (double) cache.size());
+        return stats;
+    }
+
+    @Override
+    public int parameters() {
+        return target.parameters();
+    }
+
+    @Override
+    public String toString() {
+        return target.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+
+/**
+ * {@code channel(n)}: a new {@link Channel} holding up to n values.
+ */
+@Expose("channel")
+public class NewChannel implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof Double) {
+            double capacity = (double) obj;
+            if (capacity == (int) capacity && capacity >= 1) {
+                return new Channel((int) capacity);
+            }
+        }
+        throw new ExecutionException("Expected a capacity of at least 1");
+    }
+
+    @Override
+    public int parameters() {
+        return 1;
+    }
+}
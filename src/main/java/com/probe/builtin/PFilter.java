@@ -0,0 +1,42 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeArray;
+import com.probe.Values;
+
+/**
+ * {@code pfilter(arr, fn)}: a new array of the elements fn is true for, in order, testing them in parallel, see
+ * {@link Parallel}.
+ */
+@Expose("pfilter")
+public class PFilter implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        Object fn = arguments.get(1);
+        if (!(obj instanceof ProbeArray)) {
+            throw new ExecutionException("Expected array");
+        }
+        if (!(fn instanceof Callable) || ((Callable) fn).parameters() != 1) {
+            throw new ExecutionException("Expected function of one argument");
+        }
+        ProbeArray array = (ProbeArray) obj;
+        Object[] tests = Parallel.map(interpreter, (Callable) fn, array);
+        ProbeArray kept = new ProbeArray(new Object[0]);
+        for (int i = 0; i < tests.length; ++i) {
+            if (Values.isTrue(tests[i])) {
+                kept.push(array.get(i));
+            }
+        }
+        return kept;
+    }
+
+    @Override
+    public int parameters() {
+        return 2;
+    }
+}
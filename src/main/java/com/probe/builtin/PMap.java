@@ -0,0 +1,32 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeArray;
+
+/**
+ * {@code pmap(arr, fn)}: a new array of fn applied to each element, computed in parallel, see {@link Parallel}.
+ */
+@Expose("pmap")
+public class PMap implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        Object fn = arguments.get(1);
+        if (!(obj instanceof ProbeArray)) {
+            throw new ExecutionException("Expected array");
+        }
+        if (!(fn instanceof Callable) || ((Callable) fn).parameters() != 1) {
+            throw new ExecutionException("Expected function of one argument");
+        }
+        return new ProbeArray(Parallel.map(interpreter, (Callable) fn, (ProbeArray) obj));
+    }
+
+    @Override
+    public int parameters() {
+        return 2;
+    }
+}
@@ -0,0 +1,34 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeArray;
+
+/**
+ * {@code preduce(arr, fn, init)}: the elements combined with fn, starting from init, in parallel, see
+ * {@link Parallel}. fn has to be associative, as with + or max, since the pieces are combined in whatever
+ * grouping the split gives.
+ */
+@Expose("preduce")
+public class PReduce implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        Object fn = arguments.get(1);
+        if (!(obj instanceof ProbeArray)) {
+            throw new ExecutionException("Expected array");
+        }
+        if (!(fn instanceof Callable) || ((Callable) fn).parameters() != 2) {
+            throw new ExecutionException("Expected function of two arguments");
+        }
+        return Parallel.reduce(interpreter, (Callable) fn, (ProbeArray) obj, arguments.get(2));
+    }
+
+    @Override
+    public int parameters() {
+        return 3;
+    }
+}
@@ -0,0 +1,133 @@
+package com.probe.builtin;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeArray;
+
+/**
+ * Runs a function over the elements of an array on the common fork-join pool, for the parallel builtins. The array
+ * is split in halves down to pieces of at most {@code probe.parallel.threshold} elements, 1000 by default, and
+ * each piece runs on an interpreter forked from the caller's. Arrays no longer than that run on the calling
+ * thread, as does everything under the VM, whose functions cannot run on two threads at once.
+ * <p>
+ * The function may read anything, but writing to variables other threads can see is up to the script to avoid.
+ */
+final class Parallel {
+    static final int THRESHOLD = Integer.getInteger("probe.parallel.threshold", 1000);
+
+    private Parallel() {
+    }
+
+    private static boolean sequential(Interpreter interpreter, ProbeArray array) {
+        return interpreter == null || array.size() <= THRESHOLD;
+    }
+
+    /**
+     * The results of calling fn on each element, in order.
+     */
+    static Object[] map(Interpreter interpreter, Callable fn, ProbeArray array) {
+        Object[] results = new Object[array.size()];
+        if (sequential(interpreter, array)) {
+            apply(interpreter, fn, array, results, 0, results.length);
+        } else {
+            ForkJoinPool.commonPool().invoke(new MapTask(interpreter, fn, array, results, 0, results.length));
+        }
+        return results;
+    }
+
+    private static void apply(Interpreter interpreter, Callable fn, ProbeArray array, Object[] results, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            results[i] = fn.call(interpreter, Collections.singletonList(array.get(i)));
+        }
+    }
+
+    /**
+     * Combines the elements with fn, starting from init. Pieces are combined in order but grouped freely, so fn
+     * has to be associative.
+     */
+    static Object reduce(Interpreter interpreter, Callable fn, ProbeArray array, Object init) {
+        if (sequential(interpreter, array)) {
+            Object result = init;
+            for (int i = 0; i < array.size(); ++i) {
+                result = fn.call(interpreter, pair(result, array.get(i)));
+            }
+            return result;
+        }
+        Object total = ForkJoinPool.commonPool().invoke(new ReduceTask(interpreter, fn, array, 0, array.size()));
+        return fn.call(interpreter, pair(init, total));
+    }
+
+    private static List<Object> pair(Object left, Object right) {
+        return Arrays.asList(left, right);
+    }
+
+    private static final class MapTask extends RecursiveAction {
+        private final Interpreter interpreter;
+        private final Callable fn;
+        private final ProbeArray array;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+
+        MapTask(Interpreter interpreter, Callable fn, ProbeArray array, Object[] results, int from, int to) {
+            this.interpreter = interpreter;
+            this.fn = fn;
+            this.array = array;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                apply(interpreter.fork(), fn, array, results, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new MapTask(interpreter, fn, array, results, from, middle),
+                    new MapTask(interpreter, fn, array, results, middle, to));
+        }
+    }
+
+    // the reduction of a non-empty range, without init
+    private static final class ReduceTask extends RecursiveTask<Object> {
+        private final Interpreter interpreter;
+        private final Callable fn;
+        private final ProbeArray array;
+        private final int from;
+        private final int to;
+
+        ReduceTask(Interpreter interpreter, Callable fn, ProbeArray array, int from, int to) {
+            this.interpreter = interpreter;
+            this.fn = fn;
+            this.array = array;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Object compute() {
+            Interpreter worker = interpreter.fork();
+            if (to - from <= THRESHOLD) {
+                Object result = array.get(from);
+                for (int i = from + 1; i < to; ++i) {
+                    result = fn.call(worker, pair(result, array.get(i)));
+                }
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            ReduceTask left = new ReduceTask(interpreter, fn, array, from, middle);
+            left.fork();
+            Object right = new ReduceTask(interpreter, fn, array, middle, to).compute();
+            return fn.call(worker, pair(left.join(), right));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeArray;
+
+@Expose("pop")
+public class Pop implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof ProbeArray) {
+            ProbeArray array = (ProbeArray) obj;
+            if (array.size() == 0) {
+                throw new ExecutionException("Cannot pop from an empty array");
+            }
+            return array.pop();
+        }
+        throw new ExecutionException("Expected array");
+    }
+
+    @Override
+    public int parameters() {
+        return 1;
+    }
+}
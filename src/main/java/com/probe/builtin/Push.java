@@ -0,0 +1,27 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeArray;
+
+@Expose("push")
+public class Push implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof ProbeArray) {
+            ProbeArray array = (ProbeArray) obj;
+            array.push(arguments.get(1));
+            return (double) array.size();
+        }
+        throw new ExecutionException("Expected array");
+    }
+
+    @Override
+    public int parameters() {
+        return 2;
+    }
+}
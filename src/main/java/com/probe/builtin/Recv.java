@@ -0,0 +1,27 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+
+/**
+ * {@code recv(ch)}: takes the oldest value off a channel, waiting for one to be sent.
+ */
+@Expose("recv")
+public class Recv implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof Channel) {
+            return ((Channel) obj).recv();
+        }
+        throw new ExecutionException("Expected channel");
+    }
+
+    @Override
+    public int parameters() {
+        return 1;
+    }
+}
@@ -0,0 +1,29 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+import com.probe.ProbeMap;
+
+@Expose("remove")
+public class Remove implements Callable {
+
+    /**
+     * Returns the value the key had, or nil when the map did not have it.
+     */
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof ProbeMap) {
+            Object key = ProbeMap.key(arguments.get(1));
+            return key != null ? ((ProbeMap) obj).remove(key) : null;
+        }
+        throw new ExecutionException("Expected map");
+    }
+
+    @Override
+    public int parameters() {
+        return 2;
+    }
+}
@@ -0,0 +1,28 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+
+/**
+ * {@code send(ch, value)}: puts value on a channel, waiting for room, and returns value.
+ */
+@Expose("send")
+public class Send implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object obj = arguments.get(0);
+        if (obj instanceof Channel) {
+            ((Channel) obj).send(arguments.get(1));
+            return arguments.get(1);
+        }
+        throw new ExecutionException("Expected channel");
+    }
+
+    @Override
+    public int parameters() {
+        return 2;
+    }
+}
@@ -5,25 +5,25 @@ import java.util.List;
 import com.probe.Callable;
 import com.probe.Interpreter;
 import com.probe.ProbeArray;
+import com.probe.Values;
 
 @Expose("set")
 public class Set implements Callable {
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
         Object obj = arguments.get(0);
-        if (obj instanceof String) {
-            return ((String) obj);
+        if (Values.isString(obj)) {
+            return obj;
         } else if (obj instanceof ProbeArray) {
-            ProbeArray array = (ProbeArray) obj;
-            //ProbeArray newArray = new ProbeArray(((ProbeArray) obj).size());
-            Object objects[] = new Object[array.size()];
-            for (int i = 0; i < objects.length; ++i) {
-                objects[i] = array.get(i);
-            }
+            // the new array shares all but the path to the changed element with the old one
+            ProbeArray array = ((ProbeArray) obj).copy();
             double pos = (double) arguments.get(1);
             int ipos = (int) pos;
-            objects[ipos] = arguments.get(2);
-            return new ProbeArray(objects);
+            if (ipos < 0 || ipos >= array.size()) {
+                throw new ExecutionException("Index out of range");
+            }
+            array.set(ipos, arguments.get(2));
+            return array;
         }
         throw new ExecutionException("Expected string or array");
     }
@@ -0,0 +1,31 @@
+package com.probe.builtin;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+
+/**
+ * {@code spawn(fn)}: starts fn, which takes no arguments, as a {@link Task} and returns the task.
+ */
+@Expose("spawn")
+public class Spawn implements Callable {
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object fn = arguments.get(0);
+        if (!(fn instanceof Callable) || ((Callable) fn).parameters() != 0) {
+            throw new ExecutionException("Expected function of no arguments");
+        }
+        if (interpreter == null) {
+            // the VM has one operand stack, so its functions can only run on one thread
+            throw new ExecutionException("spawn is not available on the VM");
+        }
+        return new Task(interpreter.fork(), (Callable) fn);
+    }
+
+    @Override
+    public int parameters() {
+        return 1;
+    }
+}
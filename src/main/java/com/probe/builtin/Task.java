@@ -0,0 +1,52 @@
+package com.probe.builtin;
+
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+
+/**
+ * A function running on its own, made by {@code spawn}. Tasks share one work-stealing pool with a thread per core
+ * rather than a thread each, and a task blocked on a {@link Channel} or on {@code await} has the pool start a
+ * spare thread so the others keep running.
+ * <p>
+ * A task runs its function on a {@link Interpreter#fork() fork} of the interpreter that spawned it, against the
+ * same closure: the variables it closes over, and the arrays and maps they hold, are the very ones the spawning
+ * code and any other task closing over them read and write. Nothing about them is locked, so sharing is safe only
+ * when it follows these rules:
+ * <ul>
+ * <li>a task sees every write made before it was spawned,</li>
+ * <li>a {@code recv} sees every write the sender made before its {@code send},</li>
+ * <li>{@code await} sees every write the task made.</li>
+ * </ul>
+ * Writes to the same variable that are not ordered that way race: which one wins is undefined, and an update
+ * like {@code x = x + 1} from two tasks can lose one of them. Arrays and maps changed by two tasks at once can
+ * lose elements or fail. To combine work, send the pieces over a channel or return them for {@code await}
+ * rather than writing to a shared variable.
+ * <p>
+ * An error in a task is raised again by {@code await}, in whichever thread awaits it.
+ */
+public final class Task {
+    private static final ForkJoinPool scheduler = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+    private final ForkJoinTask<Object> future;
+
+    Task(final Interpreter interpreter, final Callable fn) {
+        future = scheduler.submit(() -> fn.call(interpreter, Collections.emptyList()));
+    }
+
+    /**
+     * Waits for the function to finish and returns its result.
+     */
+    Object await() {
+        return future.join();
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
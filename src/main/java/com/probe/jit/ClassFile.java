@@ -0,0 +1,188 @@
+package com.probe.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a class file with methods but no fields. Classes are emitted in version 49, which the JVM verifies by
+ * type inference, so bodies need no stack map frames.
+ */
+public final class ClassFile {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int VERSION = 49;
+
+    private static final int UTF8 = 1;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD = 9;
+    private static final int METHOD = 10;
+    private static final int INTERFACE_METHOD = 11;
+    private static final int NAME_AND_TYPE = 12;
+
+    private final String name;
+    private final String superName;
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolSize = 1;
+    private final List<Code> methods = new ArrayList<>();
+
+    /**
+     * Names are internal names, e.g. {@code com/probe/jit/Compiled1}.
+     */
+    public ClassFile(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Code method(int access, String name, String descriptor) {
+        Code code = new Code(this, access, utf8(name), utf8(descriptor));
+        code.locals(1 + Code.argumentsWidth(descriptor));
+        methods.add(code);
+        return code;
+    }
+
+    public byte[] toByteArray() {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int codeName = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                method.write(out, codeName);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    int utf8(String value) {
+        Integer index = entries.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolOut.writeByte(UTF8);
+            poolOut.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return add("U" + value, 1);
+    }
+
+    int classRef(String internalName) {
+        return reference(CLASS, "C" + internalName, utf8(internalName));
+    }
+
+    int string(String value) {
+        return reference(STRING, "S" + value, utf8(value));
+    }
+
+    int number(double value) {
+        String key = "D" + Double.doubleToRawLongBits(value);
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolOut.writeByte(DOUBLE);
+            poolOut.writeDouble(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        // a double takes two entries
+        return add(key, 2);
+    }
+
+    int field(String owner, String name, String descriptor) {
+        return member(FIELD, owner, name, descriptor);
+    }
+
+    int method(String owner, String name, String descriptor, boolean isInterface) {
+        return member(isInterface ? INTERFACE_METHOD : METHOD, owner, name, descriptor);
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + descriptor;
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        write(tag, ownerIndex, nameAndType);
+        return add(key, 1);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        write(NAME_AND_TYPE, nameIndex, descriptorIndex);
+        return add(key, 1);
+    }
+
+    private int reference(int tag, String key, int utf8) {
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolOut.writeByte(tag);
+            poolOut.writeShort(utf8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return add(key, 1);
+    }
+
+    private void write(int tag, int first, int second) {
+        try {
+            poolOut.writeByte(tag);
+            poolOut.writeShort(first);
+            poolOut.writeShort(second);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int add(String key, int size) {
+        int index = poolSize;
+        if (index + size > 0xFFFF) {
+            throw new IllegalStateException("constant pool too large");
+        }
+        entries.put(key, index);
+        poolSize += size;
+        return index;
+    }
+}
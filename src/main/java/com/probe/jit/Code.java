@@ -0,0 +1,341 @@
+package com.probe.jit;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The body of one method in a {@link ClassFile}. Every instruction tracks its effect on the operand stack so the
+ * maximum depth can be written out without a separate analysis.
+ */
+public final class Code {
+    public static final int ACONST_NULL = 1;
+    public static final int ICONST_0 = 3;
+    public static final int ICONST_1 = 4;
+    public static final int ILOAD = 21;
+    public static final int DLOAD = 24;
+    public static final int ALOAD = 25;
+    public static final int ISTORE = 54;
+    public static final int DSTORE = 57;
+    public static final int ASTORE = 58;
+    public static final int AALOAD = 50;
+    public static final int AASTORE = 83;
+    public static final int POP = 87;
+    public static final int POP2 = 88;
+    public static final int DUP = 89;
+    public static final int DUP2 = 92;
+    public static final int DADD = 99;
+    public static final int DSUB = 103;
+    public static final int DMUL = 107;
+    public static final int DDIV = 111;
+    public static final int DNEG = 119;
+    public static final int IXOR = 130;
+    public static final int DCMPL = 151;
+    public static final int DCMPG = 152;
+    public static final int IFEQ = 153;
+    public static final int IFNE = 154;
+    public static final int IFLT = 155;
+    public static final int IFGE = 156;
+    public static final int IFGT = 157;
+    public static final int IFLE = 158;
+    public static final int IF_ICMPEQ = 159;
+    public static final int IF_ICMPNE = 160;
+    public static final int GOTO = 167;
+    public static final int IRETURN = 172;
+    public static final int ARETURN = 176;
+    public static final int RETURN = 177;
+    public static final int GETSTATIC = 178;
+    public static final int GETFIELD = 180;
+    public static final int INVOKEVIRTUAL = 182;
+    public static final int INVOKESPECIAL = 183;
+    public static final int INVOKESTATIC = 184;
+    public static final int INVOKEINTERFACE = 185;
+    public static final int NEW = 187;
+    public static final int ANEWARRAY = 189;
+    public static final int ATHROW = 191;
+    public static final int CHECKCAST = 192;
+
+    private static final int BIPUSH = 16;
+    private static final int SIPUSH = 17;
+    private static final int LDC = 18;
+    private static final int LDC_W = 19;
+    private static final int LDC2_W = 20;
+    private static final int DCONST_0 = 14;
+    private static final int WIDE = 196;
+
+    private final ClassFile owner;
+    private final int access;
+    private final int name;
+    private final int descriptor;
+    private byte[] code = new byte[64];
+    private int size;
+    private int stack;
+    private int maxStack;
+    private int maxLocals;
+    // {start, end, handler} of catch-all ranges
+    private final List<Label[]> handlers = new ArrayList<>();
+
+    Code(ClassFile owner, int access, int name, int descriptor) {
+        this.owner = owner;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Reserves local variable slots up to {@code count}, including {@code this} and the parameters.
+     */
+    public void locals(int count) {
+        maxLocals = Math.max(maxLocals, count);
+    }
+
+    /**
+     * An instruction without operands.
+     */
+    public void op(int opcode) {
+        byte1(opcode);
+        adjust(effect(opcode));
+    }
+
+    public void push(int value) {
+        if (value >= -1 && value <= 5) {
+            byte1(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            byte1(BIPUSH);
+            byte1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            byte1(SIPUSH);
+            byte2(value);
+        } else {
+            throw new IllegalArgumentException("constant out of range: " + value);
+        }
+        adjust(1);
+    }
+
+    public void push(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L || value == 1.0) {
+            byte1(DCONST_0 + (int) value);
+        } else {
+            byte1(LDC2_W);
+            byte2(owner.number(value));
+        }
+        adjust(2);
+    }
+
+    public void push(String value) {
+        int index = owner.string(value);
+        if (index <= 0xFF) {
+            byte1(LDC);
+            byte1(index);
+        } else {
+            byte1(LDC_W);
+            byte2(index);
+        }
+        adjust(1);
+    }
+
+    /**
+     * A load or store of a local variable.
+     */
+    public void local(int opcode, int index) {
+        if (index > 0xFF) {
+            byte1(WIDE);
+            byte1(opcode);
+            byte2(index);
+        } else {
+            byte1(opcode);
+            byte1(index);
+        }
+        int width = opcode == DLOAD || opcode == DSTORE ? 2 : 1;
+        adjust(opcode == ILOAD || opcode == DLOAD || opcode == ALOAD ? width : -width);
+        maxLocals = Math.max(maxLocals, index + width);
+    }
+
+    public void field(int opcode, String owner, String name, String descriptor) {
+        byte1(opcode);
+        byte2(this.owner.field(owner, name, descriptor));
+        int width = width(descriptor.charAt(0));
+        if (opcode == GETSTATIC) {
+            adjust(width);
+        } else {
+            adjust(opcode == GETFIELD ? width - 1 : -width - 1);
+        }
+    }
+
+    public void invoke(int opcode, String owner, String name, String descriptor) {
+        byte1(opcode);
+        byte2(this.owner.method(owner, name, descriptor, opcode == INVOKEINTERFACE));
+        int arguments = argumentsWidth(descriptor) + (opcode == INVOKESTATIC ? 0 : 1);
+        if (opcode == INVOKEINTERFACE) {
+            byte1(arguments);
+            byte1(0);
+        }
+        adjust(width(descriptor.charAt(descriptor.indexOf(')') + 1)) - arguments);
+    }
+
+    /**
+     * NEW, ANEWARRAY or CHECKCAST of an internal class name.
+     */
+    public void type(int opcode, String internalName) {
+        byte1(opcode);
+        byte2(owner.classRef(internalName));
+        adjust(opcode == NEW ? 1 : 0);
+    }
+
+    public void jump(int opcode, Label label) {
+        int position = size;
+        byte1(opcode);
+        adjust(effect(opcode));
+        if (label.position >= 0) {
+            byte2(offset(label.position - position));
+        } else {
+            label.fixups.add(new int[]{position, size});
+            byte2(0);
+        }
+        label.stack = stack;
+    }
+
+    public void mark(Label label) {
+        label.position = size;
+        for (int[] fixup : label.fixups) {
+            int offset = offset(size - fixup[0]);
+            code[fixup[1]] = (byte) (offset >> 8);
+            code[fixup[1] + 1] = (byte) offset;
+        }
+        label.fixups.clear();
+        // code after an unconditional jump is only reached through the label
+        if (label.stack >= 0) {
+            stack = label.stack;
+        }
+        label.stack = stack;
+    }
+
+    /**
+     * Sends anything thrown between {@code start} and {@code end} to {@code handler}, which starts with the
+     * exception on the stack.
+     */
+    public void catchAll(Label start, Label end, Label handler) {
+        handlers.add(new Label[]{start, end, handler});
+        handler.stack = 1;
+        maxStack = Math.max(maxStack, 1);
+    }
+
+    void write(DataOutputStream out, int codeName) throws IOException {
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + size + 8 * handlers.size());
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(size);
+        out.write(code, 0, size);
+        out.writeShort(handlers.size());
+        for (Label[] handler : handlers) {
+            out.writeShort(handler[0].position);
+            out.writeShort(handler[1].position);
+            out.writeShort(handler[2].position);
+            out.writeShort(0);
+        }
+        out.writeShort(0);
+    }
+
+    private static int offset(int offset) {
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new IllegalStateException("method too large");
+        }
+        return offset;
+    }
+
+    private void adjust(int delta) {
+        stack += delta;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void byte1(int value) {
+        if (size == code.length) {
+            if (size >= 0xFFFF) {
+                throw new IllegalStateException("method too large");
+            }
+            code = Arrays.copyOf(code, size * 2);
+        }
+        code[size++] = (byte) value;
+    }
+
+    private void byte2(int value) {
+        byte1(value >> 8);
+        byte1(value);
+    }
+
+    private static int width(char type) {
+        switch (type) {
+            case 'V':
+                return 0;
+            case 'D':
+            case 'J':
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    static int argumentsWidth(String descriptor) {
+        int width = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char type = descriptor.charAt(i);
+            width += width(type);
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            i++;
+        }
+        return width;
+    }
+
+    private static int effect(int opcode) {
+        switch (opcode) {
+            case ACONST_NULL:
+            case DUP:
+                return 1;
+            case DUP2:
+                return 2;
+            case AALOAD:
+            case POP:
+            case IXOR:
+            case IFEQ:
+            case IFNE:
+            case IFLT:
+            case IFGE:
+            case IFGT:
+            case IFLE:
+            case IRETURN:
+            case ARETURN:
+            case ATHROW:
+                return -1;
+            case POP2:
+            case DADD:
+            case DSUB:
+            case DMUL:
+            case DDIV:
+            case IF_ICMPEQ:
+            case IF_ICMPNE:
+                return -2;
+            case AASTORE:
+            case DCMPL:
+            case DCMPG:
+                return -3;
+            case DNEG:
+            case GOTO:
+            case RETURN:
+                return 0;
+        }
+        throw new IllegalArgumentException("unsupported opcode " + opcode);
+    }
+}
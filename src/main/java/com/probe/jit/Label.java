@@ -0,0 +1,14 @@
+package com.probe.jit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A position in a {@link Code} body that jumps can target before it is known.
+ */
+public final class Label {
+    int position = -1;
+    int stack = -1;
+    // {opcode position, offset position} of forward jumps waiting for this label
+    final List<int[]> fixups = new ArrayList<>();
+}
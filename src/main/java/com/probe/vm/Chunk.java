@@ -0,0 +1,122 @@
+package com.probe.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.probe.Token;
+
+/**
+ * Code, constant pool and error positions of one compiled function.
+ * Also tracks the operand stack height so the VM knows how much stack a frame needs.
+ */
+public final class Chunk {
+    private int[] code = new int[32];
+    private Token[] tokens = new Token[32];
+    private int count;
+
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    private int stackHeight;
+    private int maxStack;
+
+    public int emit(int op, int... operands) {
+        return emit(null, op, operands);
+    }
+
+    /**
+     * @param token reported if the instruction fails at runtime
+     * @return position of the instruction
+     */
+    public int emit(Token token, int op, int... operands) {
+        if (operands.length != OpCode.OPERANDS[op]) {
+            throw new IllegalArgumentException("wrong operand count for opcode " + op);
+        }
+        int position = count;
+        ensureCapacity(count + 1 + operands.length);
+        tokens[count] = token;
+        code[count++] = op;
+        for (int operand : operands) {
+            code[count++] = operand;
+        }
+        switch (op) {
+            case OpCode.CALL:
+            case OpCode.TAIL_CALL:
+                adjustStack(-operands[0]);
+                break;
+            case OpCode.ARRAY:
+                adjustStack(1 - operands[0]);
+                break;
+            case OpCode.MAP:
+                adjustStack(1 - 2 * operands[0]);
+                break;
+            default:
+                adjustStack(OpCode.STACK_EFFECT[op]);
+        }
+        return position;
+    }
+
+    /**
+     * Emits a jump with an unknown target.
+     *
+     * @return position of the operand to pass to {@link #patchJump(int)}
+     */
+    public int emitJump(int op) {
+        return emit(op, -1) + 1;
+    }
+
+    public void patchJump(int operand) {
+        code[operand] = count;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            if (!(value instanceof VmFunction)) {
+                constantIndex.put(value, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Corrects the tracked height where two branches that each pushed a value join.
+     */
+    public void adjustStack(int delta) {
+        stackHeight += delta;
+        maxStack = Math.max(maxStack, stackHeight);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > code.length) {
+            int size = Math.max(capacity, code.length * 2);
+            code = Arrays.copyOf(code, size);
+            tokens = Arrays.copyOf(tokens, size);
+        }
+    }
+
+    int[] code() {
+        return code;
+    }
+
+    Token token(int position) {
+        return tokens[position];
+    }
+
+    Object[] constants() {
+        return constants.toArray();
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+}
@@ -0,0 +1,34 @@
+package com.probe.vm;
+
+import java.util.List;
+
+import com.probe.Callable;
+import com.probe.Interpreter;
+
+public final class Closure implements Callable {
+    final VmFunction function;
+    final Scope scope;
+    final VM vm;
+
+    Closure(VmFunction function, Scope scope, VM vm) {
+        this.function = function;
+        this.scope = scope;
+        this.vm = vm;
+    }
+
+    // reached when a builtin calls back into Probe code
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return vm.call(this, arguments);
+    }
+
+    @Override
+    public int parameters() {
+        return function.arity;
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.probe.vm;
+
+/**
+ * Instruction set of the VM. Code is an {@code int[]}: each instruction is its opcode followed by its operands.
+ */
+public final class OpCode {
+    public static final int CONSTANT = 0;       // index
+    public static final int NIL = 1;
+    public static final int TRUE = 2;
+    public static final int FALSE = 3;
+    public static final int POP = 4;
+
+    public static final int GET_LOCAL = 5;      // depth, slot
+    public static final int SET_LOCAL = 6;      // depth, slot
+    public static final int DEFINE_LOCAL = 7;   // slot
+    public static final int GET_GLOBAL = 8;     // slot
+    public static final int SET_GLOBAL = 9;     // slot
+    public static final int DEFINE_GLOBAL = 10; // slot
+
+    public static final int ADD = 11;
+    public static final int SUBTRACT = 12;
+    public static final int MULTIPLY = 13;
+    public static final int DIVIDE = 14;
+    public static final int LESS = 15;
+    public static final int LESS_EQUAL = 16;
+    public static final int GREATER = 17;
+    public static final int GREATER_EQUAL = 18;
+    public static final int EQUAL = 19;
+    public static final int NOT_EQUAL = 20;
+    public static final int NEGATE = 21;
+    public static final int NOT = 22;
+    public static final int TRUTHY = 23;
+
+    public static final int JUMP = 24;          // target
+    public static final int JUMP_IF_FALSE = 25; // target
+
+    public static final int PUSH_SCOPE = 26;    // size
+    public static final int POP_SCOPE = 27;
+
+    public static final int CALL = 28;          // argument count
+    public static final int CLOSURE = 29;       // index of a VmFunction constant
+    public static final int RETURN = 30;
+
+    public static final int ARRAY = 31;         // element count
+    public static final int INDEX = 32;
+    public static final int PRINT = 33;
+    public static final int SET_INDEX = 34;
+    public static final int MAP = 35;           // entry count
+    public static final int TAIL_CALL = 36;     // argument count, followed by a RETURN
+
+    static final int[] OPERANDS = {
+            1, 0, 0, 0, 0,
+            2, 2, 1, 1, 1, 1,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            1, 1,
+            1, 0,
+            1, 1, 0,
+            1, 0, 0, 0, 1, 1
+    };
+
+    static final int[] STACK_EFFECT = {
+            1, 1, 1, 1, -1,
+            1, 0, -1, 1, 0, -1,
+            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 0, 0, 0,
+            0, -1,
+            0, 0,
+            0, 1, -1,
+            0, -1, -1, -2, 0, 0
+    };
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,14 @@
+package com.probe.vm;
+
+/**
+ * Local variables of a call or block, laid out by the slots the resolver assigned.
+ */
+final class Scope {
+    final Scope parent;
+    final Object[] slots;
+
+    Scope(Scope parent, int size) {
+        this.parent = parent;
+        this.slots = new Object[size];
+    }
+}
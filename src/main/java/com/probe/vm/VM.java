@@ -0,0 +1,414 @@
+package com.probe.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.probe.Budget;
+import com.probe.Callable;
+import com.probe.ErrorReporter;
+import com.probe.ProbeArray;
+import com.probe.ProbeMap;
+import com.probe.RuntimeError;
+import com.probe.Token;
+import com.probe.Values;
+import com.probe.builtin.ExecutionException;
+
+/**
+ * Stack based interpreter for {@link Chunk}s. Calls between compiled functions push a {@link Frame}
+ * instead of recursing on the Java stack; only builtins calling back into Probe code re-enter {@link #run(int)}.
+ */
+public final class VM {
+    private static final Object UNDEFINED = new Object();
+
+    private final ErrorReporter reporter;
+    private Object[] globals = new Object[0];
+
+    private Object[] stack = new Object[256];
+    private int sp;
+    private Frame[] frames = new Frame[64];
+    private int frameCount;
+    // null when the script may run for as long as it likes
+    private Budget budget;
+    // fuel left in the batch taken from the budget
+    private int ticks;
+
+    public VM(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    /**
+     * Charges loop iterations and calls of Probe functions to budget, as the tree interpreter does.
+     */
+    public void setBudget(Budget budget) {
+        this.budget = budget;
+        ticks = 0;
+    }
+
+    // the unit being charged is the first of the batch
+    private int refuel(Token token) {
+        return budget == null ? Integer.MAX_VALUE : budget.take(token) - 1;
+    }
+
+    public void defineGlobal(int slot, Object value) {
+        if (slot >= globals.length) {
+            int old = globals.length;
+            globals = Arrays.copyOf(globals, Math.max(slot + 1, old * 2));
+            Arrays.fill(globals, old, globals.length, UNDEFINED);
+        }
+        globals[slot] = value;
+    }
+
+    public void interpret(VmFunction script) {
+        try {
+            pushFrame(new Closure(script, null, this), null);
+            run(0);
+        } catch (RuntimeError error) {
+            reporter.report(error.getToken(), error.getMessage(), error.getMode());
+            sp = 0;
+            frameCount = 0;
+        }
+    }
+
+    Object call(Closure closure, List<Object> arguments) {
+        int base = frameCount;
+        ensureStack(arguments.size() + 1);
+        stack[sp++] = closure;
+        for (Object argument : arguments) {
+            stack[sp++] = argument;
+        }
+        callClosure(closure, arguments.size());
+        run(base);
+        return stack[--sp];
+    }
+
+    private void pushFrame(Closure closure, Scope scope) {
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        Frame frame = frames[frameCount];
+        if (frame == null) {
+            frame = frames[frameCount] = new Frame();
+        }
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.scope = scope;
+        frameCount++;
+        ensureStack(closure.function.maxStack);
+    }
+
+    private void ensureStack(int needed) {
+        if (sp + needed > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + needed));
+        }
+    }
+
+    // callee and arguments are on top of the stack; they are replaced by the result when the frame returns
+    private void callClosure(Closure closure, int argCount) {
+        VmFunction function = closure.function;
+        Scope scope = new Scope(closure.scope, function.slots);
+        System.arraycopy(stack, sp - argCount, scope.slots, 0, argCount);
+        sp -= argCount + 1;
+        pushFrame(closure, scope);
+    }
+
+    /**
+     * Runs until the frame count drops back to {@code base}.
+     */
+    private void run(int base) {
+        Frame frame = frames[frameCount - 1];
+        int[] code = frame.closure.function.code;
+        Object[] constants = frame.closure.function.constants;
+        Scope scope = frame.scope;
+        int ip = frame.ip;
+        Object[] stack = this.stack;
+        int sp = this.sp;
+
+        while (true) {
+            int op = code[ip++];
+            switch (op) {
+                case OpCode.CONSTANT:
+                    stack[sp++] = constants[code[ip++]];
+                    break;
+                case OpCode.NIL:
+                    stack[sp++] = null;
+                    break;
+                case OpCode.TRUE:
+                    stack[sp++] = true;
+                    break;
+                case OpCode.FALSE:
+                    stack[sp++] = false;
+                    break;
+                case OpCode.POP:
+                    stack[--sp] = null;
+                    break;
+
+                case OpCode.GET_LOCAL: {
+                    Scope target = scope;
+                    for (int depth = code[ip++]; depth > 0; --depth) {
+                        target = target.parent;
+                    }
+                    stack[sp++] = target.slots[code[ip++]];
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    Scope target = scope;
+                    for (int depth = code[ip++]; depth > 0; --depth) {
+                        target = target.parent;
+                    }
+                    target.slots[code[ip++]] = stack[sp - 1];
+                    break;
+                }
+                case OpCode.DEFINE_LOCAL:
+                    scope.slots[code[ip++]] = stack[--sp];
+                    stack[sp] = null;
+                    break;
+                case OpCode.GET_GLOBAL: {
+                    int slot = code[ip++];
+                    Object value = slot < globals.length ? globals[slot] : UNDEFINED;
+                    if (value == UNDEFINED) {
+                        throw undefined(frame.closure.function.chunk.token(ip - 2));
+                    }
+                    stack[sp++] = value;
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    int slot = code[ip++];
+                    if (slot >= globals.length || globals[slot] == UNDEFINED) {
+                        throw undefined(frame.closure.function.chunk.token(ip - 2));
+                    }
+                    globals[slot] = stack[sp - 1];
+                    break;
+                }
+                case OpCode.DEFINE_GLOBAL:
+                    defineGlobal(code[ip++], stack[--sp]);
+                    stack[sp] = null;
+                    break;
+
+                case OpCode.ADD: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp - 1] = (double) left + (double) right;
+                    } else if (Values.isString(left) && Values.isString(right)) {
+                        stack[sp - 1] = Values.concat(left, right);
+                    } else {
+                        throw new RuntimeError(frame.closure.function.chunk.token(ip - 1), "str or num", ErrorReporter.Mode.COVER);
+                    }
+                    break;
+                }
+                case OpCode.SUBTRACT:
+                case OpCode.MULTIPLY:
+                case OpCode.DIVIDE:
+                case OpCode.LESS:
+                case OpCode.LESS_EQUAL:
+                case OpCode.GREATER:
+                case OpCode.GREATER_EQUAL: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (!(left instanceof Double && right instanceof Double)) {
+                        throw new RuntimeError(frame.closure.function.chunk.token(ip - 1), "DOUBLE NO", ErrorReporter.Mode.COVER);
+                    }
+                    stack[sp - 1] = arithmetic(op, (double) left, (double) right);
+                    break;
+                }
+                case OpCode.EQUAL: {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = Values.isEqual(stack[sp - 1], right);
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = !Values.isEqual(stack[sp - 1], right);
+                    break;
+                }
+                case OpCode.NEGATE:
+                    stack[sp - 1] = -(double) stack[sp - 1];
+                    break;
+                case OpCode.NOT:
+                    stack[sp - 1] = !Values.isTrue(stack[sp - 1]);
+                    break;
+                case OpCode.TRUTHY:
+                    stack[sp - 1] = Values.isTrue(stack[sp - 1]);
+                    break;
+
+                case OpCode.JUMP: {
+                    int target = code[ip];
+                    // jumping back is a loop going round again
+                    if (target < ip && --ticks < 0) {
+                        ticks = refuel(frame.closure.function.chunk.token(ip - 1));
+                    }
+                    ip = target;
+                    break;
+                }
+                case OpCode.JUMP_IF_FALSE: {
+                    Object condition = stack[--sp];
+                    stack[sp] = null;
+                    ip = Values.isTrue(condition) ? ip + 1 : code[ip];
+                    break;
+                }
+
+                case OpCode.PUSH_SCOPE:
+                    scope = new Scope(scope, code[ip++]);
+                    break;
+                case OpCode.POP_SCOPE:
+                    scope = scope.parent;
+                    break;
+
+                case OpCode.CALL:
+                case OpCode.TAIL_CALL: {
+                    int argCount = code[ip++];
+                    Object callee = stack[sp - argCount - 1];
+                    Token rightParen = frame.closure.function.chunk.token(ip - 2);
+                    Callable callable = (Callable) callee;
+                    if (callable.parameters() != argCount) {
+                        throw new RuntimeError(rightParen, "not enough arguments to call", ErrorReporter.Mode.COVER);
+                    }
+                    if (callee instanceof Closure && --ticks < 0) {
+                        ticks = refuel(rightParen);
+                    }
+                    if (op == OpCode.TAIL_CALL && callee instanceof Closure && ((Closure) callee).vm == this) {
+                        // the callee takes over this frame, so its RETURN goes straight back to our caller
+                        Closure closure = (Closure) callee;
+                        Scope calleeScope = new Scope(closure.scope, closure.function.slots);
+                        System.arraycopy(stack, sp - argCount, calleeScope.slots, 0, argCount);
+                        Arrays.fill(stack, sp - argCount - 1, sp, null);
+                        sp -= argCount + 1;
+                        this.sp = sp;
+                        ensureStack(closure.function.maxStack);
+                        frame.closure = closure;
+                        frame.scope = calleeScope;
+                        code = closure.function.code;
+                        constants = closure.function.constants;
+                        scope = calleeScope;
+                        ip = 0;
+                        stack = this.stack;
+                        break;
+                    }
+                    if (callee instanceof Closure && ((Closure) callee).vm == this) {
+                        frame.ip = ip;
+                        frame.scope = scope;
+                        this.sp = sp;
+                        callClosure((Closure) callee, argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.code;
+                        constants = frame.closure.function.constants;
+                        scope = frame.scope;
+                        ip = 0;
+                        stack = this.stack;
+                        sp = this.sp;
+                        break;
+                    }
+                    List<Object> arguments = new ArrayList<>(argCount);
+                    for (int i = sp - argCount; i < sp; ++i) {
+                        arguments.add(stack[i]);
+                        stack[i] = null;
+                    }
+                    sp -= argCount;
+                    frame.ip = ip;
+                    this.sp = sp;
+                    Object result;
+                    try {
+                        // compiled code has no tree-walking interpreter to hand to builtins
+                        result = callable.call(null, arguments);
+                    } catch (ExecutionException e) {
+                        throw new RuntimeError(rightParen, e.getMessage(), ErrorReporter.Mode.COVER);
+                    }
+                    stack = this.stack;
+                    stack[sp - 1] = result;
+                    break;
+                }
+                case OpCode.CLOSURE:
+                    stack[sp++] = new Closure((VmFunction) constants[code[ip++]], scope, this);
+                    break;
+                case OpCode.RETURN: {
+                    Object result = stack[--sp];
+                    frameCount--;
+                    if (frameCount == base) {
+                        stack[sp] = result;
+                        this.sp = sp + 1;
+                        return;
+                    }
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.code;
+                    constants = frame.closure.function.constants;
+                    scope = frame.scope;
+                    ip = frame.ip;
+                    stack[sp++] = result;
+                    break;
+                }
+
+                case OpCode.ARRAY: {
+                    int count = code[ip++];
+                    Object[] objects = Arrays.copyOfRange(stack, sp - count, sp);
+                    Arrays.fill(stack, sp - count, sp, null);
+                    sp -= count;
+                    stack[sp++] = new ProbeArray(objects);
+                    break;
+                }
+                case OpCode.MAP: {
+                    int count = code[ip++];
+                    ProbeMap map = new ProbeMap();
+                    Token leftBrace = frame.closure.function.chunk.token(ip - 2);
+                    for (int i = sp - 2 * count; i < sp; i += 2) {
+                        Values.setIndex(map, stack[i], stack[i + 1], leftBrace);
+                    }
+                    Arrays.fill(stack, sp - 2 * count, sp, null);
+                    sp -= 2 * count;
+                    stack[sp++] = map;
+                    break;
+                }
+                case OpCode.INDEX: {
+                    Object pos = stack[--sp];
+                    Object arr = stack[sp - 1];
+                    stack[sp - 1] = Values.index(arr, pos, frame.closure.function.chunk.token(ip - 1));
+                    break;
+                }
+                case OpCode.SET_INDEX: {
+                    Object value = stack[--sp];
+                    Object pos = stack[--sp];
+                    stack[sp] = null;
+                    Object arr = stack[sp - 1];
+                    stack[sp - 1] = Values.setIndex(arr, pos, value, frame.closure.function.chunk.token(ip - 1));
+                    break;
+                }
+                case OpCode.PRINT:
+                    System.out.println(Values.stringify(stack[--sp]));
+                    stack[sp] = null;
+                    break;
+
+                default:
+                    throw new IllegalStateException("unknown opcode " + op);
+            }
+        }
+    }
+
+    private static Object arithmetic(int op, double left, double right) {
+        switch (op) {
+            case OpCode.SUBTRACT:
+                return left - right;
+            case OpCode.MULTIPLY:
+                return left * right;
+            case OpCode.DIVIDE:
+                return left / right;
+            case OpCode.LESS:
+                return left < right;
+            case OpCode.LESS_EQUAL:
+                return left <= right;
+            case OpCode.GREATER:
+                return left > right;
+            default:
+                return left >= right;
+        }
+    }
+
+    private static RuntimeError undefined(Token name) {
+        return new RuntimeError(name, "Undefined variable '" + name.getLexeme() + "'.", ErrorReporter.Mode.COVER);
+    }
+
+    private static final class Frame {
+        Closure closure;
+        int ip;
+        Scope scope;
+    }
+}
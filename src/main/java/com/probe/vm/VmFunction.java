@@ -0,0 +1,30 @@
+package com.probe.vm;
+
+/**
+ * A compiled function body. {@link Closure} pairs it with the scope it was created in.
+ */
+public final class VmFunction {
+    final String name;
+    final int arity;
+    final int slots;
+    final Chunk chunk;
+
+    final int[] code;
+    final Object[] constants;
+    final int maxStack;
+
+    public VmFunction(String name, int arity, int slots, Chunk chunk) {
+        this.name = name;
+        this.arity = arity;
+        this.slots = slots;
+        this.chunk = chunk;
+        this.code = chunk.code();
+        this.constants = chunk.constants();
+        this.maxStack = chunk.maxStack();
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + (name == null ? "anonymous" : name) + ">";
+    }
+}
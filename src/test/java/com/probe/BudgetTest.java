@@ -0,0 +1,44 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BudgetTest {
+    private static final String COUNT_TO_TEN = "var i = 0;\n"
+            + "for (var j = 0; j < 10; j = j + 1) { i = i + 1; }\n"
+            + "print i;\n";
+
+    private static void check(String expected, String source, long fuel, long timeoutMillis) {
+        assertEquals(expected, Scripts.run(source, new Budget(fuel, timeoutMillis)));
+        assertEquals(expected, Scripts.runOnVm(source, new Budget(fuel, timeoutMillis)));
+    }
+
+    @Test
+    public void everyIterationBurnsFuel() {
+        check("10\n", COUNT_TO_TEN, 10, Budget.UNLIMITED);
+        check("error: Script ran out of fuel.\n", COUNT_TO_TEN, 9, Budget.UNLIMITED);
+    }
+
+    @Test
+    public void everyCallBurnsFuel() {
+        String source = "fn f() { return 1; }\n"
+                + "print f() + f() + f();\n";
+        check("3\n", source, 3, Budget.UNLIMITED);
+        check("error: Script ran out of fuel.\n", source, 2, Budget.UNLIMITED);
+    }
+
+    @Test
+    public void runawayRecursionAndTailCallsStop() {
+        check("error: Script ran out of fuel.\n", "var f = fn(n) { return f(n + 1); };\nf(0);\n", 100000,
+                Budget.UNLIMITED);
+        check("error: Script ran out of fuel.\n", "fn loop(n) { return loop(n + 1); }\nloop(0);\n", 100000,
+                Budget.UNLIMITED);
+    }
+
+    @Test
+    public void runawayLoopStopsAtTheDeadline() {
+        check("before\nerror: Script ran past its deadline.\n",
+                "print \"before\";\nvar i = 0;\nwhile (true) { i = i + 1; }\n", Budget.UNLIMITED, 100);
+    }
+}
@@ -0,0 +1,117 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs with {@code probe.jit.threshold} and {@code probe.jit.loopThreshold} at 1 and {@code probe.jit.synchronous}
+ * set, as the build configures the tests, so a loop is compiled at its first back edge and entered at its second.
+ */
+public class JitCompilerTest {
+    private final Globals globals = new Globals();
+    private final StringWriter out = new StringWriter();
+    private Interpreter interpreter;
+
+    @Before
+    public void setUp() {
+        assertEquals("tests have to run with -Dprobe.jit.loopThreshold=1", 1, JitCompiler.LOOP_THRESHOLD);
+        interpreter = new Interpreter(new ErrorReporter("", new StringWriter()), globals);
+        interpreter.setOutput(new PrintWriter(out, true));
+    }
+
+    // runs more of the script, with the globals of what ran before
+    private List<Stmt> run(String source) {
+        ErrorReporter reporter = new ErrorReporter(source, new StringWriter());
+        List<Stmt> stmts = Probe.parse(source, reporter);
+        assertNotNull(reporter.firstMessage(), stmts);
+        Resolver resolver = new Resolver(globals, reporter);
+        resolver.resolve(stmts);
+        assertEquals(null, reporter.firstMessage());
+        interpreter.run(stmts);
+        return stmts;
+    }
+
+    private String printed() {
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    public void loopDeoptimizesWhenAnOuterVariableChangesType() {
+        run("var x = 1; var i = 0; var s = 0;");
+        List<Stmt> loop = run("while (i < 100) { s = s + x; i = i + 1; }");
+        Stmt.While stmt = (Stmt.While) loop.get(0);
+        CompiledLoop numbers = stmt.compiled;
+        assertNotNull(numbers);
+        run("print s;");
+
+        // the loop was compiled with x a number, so entering it again sends it back to the interpreter
+        run("x = \"a\"; i = 0; s = \"\";");
+        interpreter.run(loop);
+        assertNotNull(stmt.compiled);
+        assertNotSame(numbers, stmt.compiled);
+        run("print len(s); print s[99];");
+        assertEquals("100\n100\na\n", printed());
+    }
+
+    @Test
+    public void innerLoopSeesTypeChangeBetweenEntries() {
+        run("var x = 1; var t = 0; var k = 0;\n"
+                + "while (k < 4) {\n"
+                + "  var j = 0;\n"
+                + "  while (j < 3) { t = t + x; j = j + 1; }\n"
+                + "  if (k == 1) { x = \"b\"; t = \"\"; }\n"
+                + "  k = k + 1;\n"
+                + "}\n"
+                + "print t;");
+        assertEquals("bbbbbb\n", printed());
+    }
+
+    @Test
+    public void loopEnteredMidwayKeepsLiveLocals() {
+        // the first call is interpreted, so its loop is compiled and entered with the locals it has so far
+        run("fn sum(n) {\n"
+                + "  var total = 0;\n"
+                + "  var label = \"squares\";\n"
+                + "  var i = 0;\n"
+                + "  while (i < n) {\n"
+                + "    var square = i * i;\n"
+                + "    total = total + square;\n"
+                + "    i = i + 1;\n"
+                + "  }\n"
+                + "  return [label, total, i];\n"
+                + "}\n"
+                + "print sum(10);\n"
+                + "print sum(4);");
+        assertEquals("[squares, 285, 10]\n[squares, 14, 4]\n", printed());
+    }
+
+    @Test
+    public void breakLeavesCompiledLoop() {
+        List<Stmt> stmts = run("var i = 0;\n"
+                + "while (true) {\n"
+                + "  i = i + 1;\n"
+                + "  if (i == 50) break;\n"
+                + "}\n"
+                + "print i;");
+        assertNotNull(((Stmt.While) stmts.get(1)).compiled);
+        run("fn first(limit) {\n"
+                + "  var n = 0;\n"
+                + "  while (n < 1000) {\n"
+                + "    if (n * n > limit) break;\n"
+                + "    n = n + 1;\n"
+                + "  }\n"
+                + "  return n;\n"
+                + "}\n"
+                + "print first(50);\n"
+                + "print first(200);");
+        assertEquals("50\n8\n15\n", printed());
+    }
+}
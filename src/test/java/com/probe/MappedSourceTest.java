@@ -0,0 +1,125 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class MappedSourceTest {
+    // a window is 64 KiB, these sources span several
+    private static final int SIZE = 200_000;
+
+    private final List<Path> files = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (Path file : files) {
+            Files.delete(file);
+        }
+    }
+
+    private CharSequence load(byte[] bytes) throws IOException {
+        Path file = Files.createTempFile("probe-source", ".pb");
+        files.add(file);
+        Files.write(file, bytes);
+        return MappedSource.load(file);
+    }
+
+    private CharSequence load(String text) throws IOException {
+        return load(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // characters of one, two, three and four bytes, so some of them straddle every window boundary
+    private static String mixed(long seed) {
+        Random random = new Random(seed);
+        String[] pieces = {"a", "\n", "\u00e9", "\u20ac", "\ud83d\ude00", "x = 1;"};
+        StringBuilder text = new StringBuilder();
+        while (text.length() < SIZE) {
+            text.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return text.toString();
+    }
+
+    private static void assertSame(String expected, CharSequence source) {
+        assertEquals(expected.length(), source.length());
+        for (int i = 0; i < expected.length(); ++i) {
+            assertEquals(expected.charAt(i), source.charAt(i));
+        }
+        assertEquals(expected, source.toString());
+    }
+
+    @Test
+    public void readsAsciiStraightFromTheMapping() throws IOException {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < SIZE) {
+            text.append("print ").append(text.length()).append(";\n");
+        }
+        assertSame(text.toString(), load(text.toString()));
+    }
+
+    @Test
+    public void decodesCharactersAcrossWindows() throws IOException {
+        for (long seed = 0; seed < 4; ++seed) {
+            String text = mixed(seed);
+            assertSame(text, load(text));
+        }
+    }
+
+    @Test
+    public void readsBackwardsAndAtRandom() throws IOException {
+        String text = mixed(7);
+        CharSequence source = load(text);
+        for (int i = text.length() - 1; i >= 0; i -= 97) {
+            assertEquals(text.charAt(i), source.charAt(i));
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; ++i) {
+            int start = random.nextInt(text.length());
+            int end = Math.min(text.length(), start + random.nextInt(40));
+            assertEquals(text.substring(start, end), source.subSequence(start, end).toString());
+        }
+    }
+
+    @Test
+    public void findsTheEndWithoutTheLength() throws IOException {
+        String text = mixed(3);
+        MappedSource source = (MappedSource) load(text);
+        int first = source.extent(0);
+        assertTrue(first > 0 && first < text.length());
+        assertEquals(text.length(), source.extent(text.length() - 1));
+        assertEquals(text.length(), source.extent(Integer.MAX_VALUE));
+        assertEquals(text.length(), source.length());
+        assertEquals(0, ((MappedSource) load(new byte[0])).extent(0));
+    }
+
+    @Test
+    public void replacesMalformedBytes() throws IOException {
+        // a Latin-1 e with an acute accent, then a sequence cut short at the end of the file
+        byte[] bytes = {'"', (byte) 0xE9, '"', ';', (byte) 0xE2, (byte) 0x82};
+        assertSame(new String(bytes, StandardCharsets.UTF_8), load(bytes));
+    }
+
+    @Test
+    public void lexesAMappedScript() throws IOException {
+        String text = "var s = \"\u20ac\";\nprint s + \"\ud83d\ude00\";\n";
+        CharSequence source = load(text);
+        ErrorReporter reporter = new ErrorReporter(source, new StringWriter());
+        Lexer lexer = new Lexer(source, reporter);
+        TokenStream tokens = lexer.scan();
+        assertFalse(lexer.isError());
+        assertEquals("\u20ac", tokens.value(3));
+        assertEquals("\ud83d\ude00", tokens.value(8));
+        assertEquals(TokenType.EOF, tokens.type(10));
+    }
+}
@@ -0,0 +1,89 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * memo and memostats, with the default capacity of 10000 results.
+ */
+public class MemoTest {
+    private static final String FIB = "var fib = memo(fn(n) {\n"
+            + "    if (n < 2) return n;\n"
+            + "    return fib(n - 1) + fib(n - 2);\n"
+            + "});\n";
+
+    // the function counts its calls, so a script can tell a hit from a miss
+    private static final String COUNTED = "var calls = 0;\n"
+            + "var f = memo(fn(x) { calls = calls + 1; return x; });\n"
+            + "fn stats() { var s = memostats(f); print [s[\"hits\"], s[\"misses\"], s[\"size\"], calls]; }\n";
+
+    @Test
+    public void fibonacciMissesEachNumberOnce() {
+        // fib(n) misses on fib(n - 1) and finds fib(n - 2), which that call left behind
+        assertEquals("true\n[78, 81, 81]\n", Scripts.run(FIB
+                + "print fib(80) == 23416728348467685;\n"
+                + "var s = memostats(fib);\n"
+                + "print [s[\"hits\"], s[\"misses\"], s[\"size\"]];\n"));
+        // a second call is one more hit
+        assertEquals("[79, 81, 81]\n", Scripts.run(FIB + "fib(80);\nfib(80);\n"
+                + "var s = memostats(fib);\n"
+                + "print [s[\"hits\"], s[\"misses\"], s[\"size\"]];\n"));
+    }
+
+    @Test
+    public void arraysAreKeptByTheirContents() {
+        assertEquals("[2, 2, 2, 2]\n", Scripts.run(COUNTED
+                + "f([1, [2, \"a\"]]);\n"
+                + "f([1, [2, \"a\"]]);\n"
+                + "var a = [1, [2, \"a\"]];\n"
+                + "f(a);\n"
+                + "f([1, [2, \"b\"]]);\n"
+                + "stats();\n"));
+        // changing an array makes it a different key, and what was cached for the old contents stays
+        assertEquals("[1, 2, 2, 2]\n", Scripts.run(COUNTED
+                + "var a = [1, 2];\n"
+                + "f(a);\n"
+                + "push(a, 3);\n"
+                + "f(a);\n"
+                + "f([1, 2]);\n"
+                + "stats();\n"));
+        // strings built in different ways are the same key
+        assertEquals("[1, 1, 1, 1]\n", Scripts.run(COUNTED + "f(\"ab\");\nf(\"a\" + \"b\");\nstats();\n"));
+    }
+
+    @Test
+    public void mapsAndArraysThatHoldThemselvesAreNotCached() {
+        assertEquals("[0, 0, 0, 4]\n", Scripts.run(COUNTED
+                + "var m = {\"a\": 1};\n"
+                + "f(m);\n"
+                + "f(m);\n"
+                + "var a = [1];\n"
+                + "push(a, a);\n"
+                + "f(a);\n"
+                + "f(a);\n"
+                + "stats();\n"));
+    }
+
+    @Test
+    public void theLeastRecentlyUsedResultIsDroppedWhenFull() {
+        assertEquals("[0, 10000, 10000, 10000]\n[1, 10001, 10000, 10001]\n[3, 10002, 10000, 10002]\n",
+                Scripts.run(COUNTED
+                        + "for (var i = 0; i < 10000; i = i + 1) f(i);\n"
+                        + "stats();\n"
+                        // 0 is now the most recently used, so 1 goes to make room for 10000
+                        + "f(0);\n"
+                        + "f(10000);\n"
+                        + "stats();\n"
+                        + "f(0);\n"
+                        + "f(10000);\n"
+                        + "f(1);\n"
+                        + "stats();\n"));
+    }
+
+    @Test
+    public void argumentsAreChecked() {
+        assertEquals("error: Expected function\n", Scripts.run("memo(1);\n"));
+        assertEquals("error: Expected memoized function\n", Scripts.run("memostats(fn(x) { return x; });\n"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+public class OptimizerTest {
+
+    private static void check(String expected, String source) {
+        assertEquals(expected, Scripts.run(source));
+        assertEquals(expected, Scripts.runOnVm(source));
+    }
+
+    private static List<Stmt> optimize(String source) {
+        List<Stmt> stmts = Probe.parse(source, new ErrorReporter(source, new StringWriter()));
+        assertTrue(stmts != null);
+        return stmts;
+    }
+
+    @Test
+    public void foldsOperatorsOnLiterals() {
+        List<Stmt> stmts = optimize("print 2 + 5 * 3 + (9 - 2) * 4;");
+        Expr folded = ((Stmt.Print) stmts.get(0)).expr;
+        assertEquals(45.0, ((Expr.Literal) folded).value);
+        check("45\nab\ntrue\nfalse\n",
+                "print 2 + 5 * 3 + (9 - 2) * 4; print \"a\" + \"b\"; print !nil; print 1 > 2 or nil;");
+    }
+
+    @Test
+    public void leavesOperationsThatFailAtRuntime() {
+        List<Stmt> stmts = optimize("print \"a\" - 1;");
+        assertTrue(((Stmt.Print) stmts.get(0)).expr instanceof Expr.Binary);
+        assertTrue(Scripts.run("print \"a\" - 1;").contains("error: "));
+    }
+
+    @Test
+    public void dropsBranchesAndLoopsWithLiteralConditions() {
+        assertEquals(1, optimize("if (1 < 2) print 1; else print 2; while (false) print 3;").size());
+        check("1\n", "if (1 < 2) print 1; else print 2; while (false) print 3;");
+    }
+
+    @Test
+    public void dropsStatementsAfterReturnAndBreak() {
+        List<Stmt> stmts = optimize("fn f() { return 1; print 2; }");
+        assertEquals(1, ((FunctionDeclaration) stmts.get(0)).body.size());
+        check("0\n1\n",
+                "fn f() { return 1; print \"unreachable\"; }\n"
+                        + "var i = 0;\n"
+                        + "while (true) { print i; break; print \"unreachable\"; }\n"
+                        + "print f();\n");
+    }
+
+    @Test
+    public void keepsFunctionsDeclaredAfterReturn() {
+        check("1\n", "fn f() { return g(); fn g() { return 1; } } print f();");
+    }
+
+    @Test
+    public void keepsFunctionsDeclaredAfterBreak() {
+        check("2\n",
+                "var r;\n"
+                        + "while (true) { r = twice(1); break; fn twice(n) { return n * 2; } }\n"
+                        + "print r;\n");
+    }
+
+    @Test
+    public void keepsVariablesHoistedFunctionsRead() {
+        check("nil\n",
+                "var x = \"global\";\n"
+                        + "fn f() { return g(); var x = 1; fn g() { return x; } }\n"
+                        + "print f();\n");
+    }
+
+    @Test
+    public void branchesThatBothReturnEndTheBlock() {
+        check("yes\n", "fn f(c) { if (c) return \"yes\"; else return \"no\"; print \"unreachable\"; } print f(true);");
+    }
+}
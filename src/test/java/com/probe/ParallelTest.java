@@ -0,0 +1,105 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * pmap, pfilter and preduce on arrays up to and past the 1000 elements a piece holds, so the longer ones run on
+ * forked interpreters on several threads.
+ */
+public class ParallelTest {
+    private static final int[] SIZES = {0, 1, 999, 1000, 1001, 2500, 10000};
+
+    private static void check(String expected, String source) {
+        assertEquals(expected, Scripts.run(source));
+        assertEquals(expected, Scripts.runOnVm(source));
+    }
+
+    // the numbers from 0 up to n
+    private static String range(int n) {
+        return "var a = [];\nfor (var i = 0; i < " + n + "; i = i + 1) push(a, i);\n";
+    }
+
+    @Test
+    public void pmapKeepsOrder() {
+        for (int n : SIZES) {
+            check("ok\n", range(n)
+                    + "var r = pmap(a, fn(x) { return x * 2; });\n"
+                    + "var ok = len(r) == " + n + ";\n"
+                    + "for (var i = 0; i < len(r); i = i + 1) if (r[i] != i * 2) ok = false;\n"
+                    + "if (ok) print \"ok\";\n");
+        }
+    }
+
+    @Test
+    public void pmapResultsNeedNotBeNumbers() {
+        check("[0, zero, 2, 3]\n", "print pmap([0, 1, 2, 3], fn(x) { if (x == 1) return \"zero\"; return x; });\n");
+        check("x\n", range(3000) + "print pmap(a, fn(x) { if (x == 2999) return \"x\"; return x; })[2999];\n");
+    }
+
+    @Test
+    public void pfilterKeepsOrder() {
+        for (int n : SIZES) {
+            // every third element
+            check("ok\n", range(n)
+                    + "var keep = [];\n"
+                    + "var c = 0;\n"
+                    + "for (var i = 0; i < " + n + "; i = i + 1) { push(keep, c == 0); c = c + 1; if (c == 3) c = 0; }\n"
+                    + "var r = pfilter(a, fn(x) { return keep[x]; });\n"
+                    + "var ok = len(r) == " + (n + 2) / 3 + ";\n"
+                    + "for (var i = 0; i < len(r); i = i + 1) if (r[i] != i * 3) ok = false;\n"
+                    + "if (ok) print \"ok\";\n");
+        }
+    }
+
+    @Test
+    public void pfilterTakesTruthiness() {
+        check("[1, 0, a]\n", "print pfilter([1, nil, 0, false, \"a\"], fn(x) { return x; });\n");
+    }
+
+    @Test
+    public void preduceStartsFromInit() {
+        for (int n : SIZES) {
+            long sum = 100L + (long) n * (n - 1) / 2;
+            check("true\n", range(n) + "print preduce(a, fn(x, y) { return x + y; }, 100) == " + sum + ";\n");
+        }
+        check("7\n", "print preduce([], fn(x, y) { return x + y; }, 7);\n");
+    }
+
+    @Test
+    public void preduceCombinesPiecesInOrder() {
+        // concatenation is associative but not commutative
+        StringBuilder expected = new StringBuilder(">");
+        for (int i = 0; i < 3000; ++i) {
+            expected.append(i % 10);
+        }
+        check(expected + "\n", "var names = [\"0\", \"1\", \"2\", \"3\", \"4\", \"5\", \"6\", \"7\", \"8\", \"9\"];\n"
+                + "var digits = [];\n"
+                + "var d = 0;\n"
+                + "for (var i = 0; i < 3000; i = i + 1) { push(digits, names[d]); d = d + 1; if (d == 10) d = 0; }\n"
+                + "print preduce(digits, fn(x, y) { return x + y; }, \">\");\n");
+    }
+
+    @Test
+    public void errorsInTheFunctionReachTheCaller() {
+        for (int n : new int[]{10, 5000}) {
+            check("error: str or num\n", range(n)
+                    + "print pmap(a, fn(x) { if (x == " + (n - 3) + ") return x + nil; return x; });\n"
+                    + "print \"after\";\n");
+            check("error: str or num\n", range(n)
+                    + "print pfilter(a, fn(x) { return x + nil; });\n"
+                    + "print \"after\";\n");
+            check("error: str or num\n", range(n)
+                    + "print preduce(a, fn(x, y) { if (y == " + (n - 3) + ") return y + nil; return x + y; }, 0);\n"
+                    + "print \"after\";\n");
+        }
+    }
+
+    @Test
+    public void argumentsAreChecked() {
+        check("error: Expected array\n", "pmap(1, fn(x) { return x; });\n");
+        check("error: Expected function of one argument\n", "pfilter([1], fn(x, y) { return x; });\n");
+        check("error: Expected function of two arguments\n", "preduce([1], fn(x) { return x; }, 0);\n");
+    }
+}
@@ -0,0 +1,165 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProbeArrayTest {
+    // one past the tail, the first trie level, the second level and the third level
+    private static final int[] BOUNDARIES = {32, 33, 64, 1024, 1056, 1057, 32768, 32800, 32801};
+    private static final int LARGEST = 32768 + 32 * 3;
+
+    private static void check(List<Object> expected, ProbeArray actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals("element " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    private static ProbeArray numbers(int size, List<Object> model) {
+        ProbeArray array = new ProbeArray(new Object[0]);
+        for (int i = 0; i < size; ++i) {
+            array.push((double) i);
+            model.add((double) i);
+        }
+        return array;
+    }
+
+    @Test
+    public void pushAndPopAcrossEveryLevel() {
+        List<Object> model = new ArrayList<>();
+        ProbeArray array = numbers(LARGEST, model);
+        check(model, array);
+        while (array.size() > 0) {
+            assertEquals(model.remove(model.size() - 1), array.pop());
+            if (array.size() % 997 == 0 || contains(BOUNDARIES, array.size())) {
+                check(model, array);
+            }
+        }
+        // and up again over a trie that has been taken down
+        for (int i = 0; i < 2000; ++i) {
+            array.push((double) -i);
+            model.add((double) -i);
+        }
+        check(model, array);
+    }
+
+    @Test
+    public void setAroundBoundaries() {
+        List<Object> model = new ArrayList<>();
+        ProbeArray array = numbers(LARGEST, model);
+        for (int boundary : BOUNDARIES) {
+            for (int index = boundary - 2; index <= boundary; ++index) {
+                if (index < array.size()) {
+                    array.set(index, (double) (index * 10));
+                    model.set(index, (double) (index * 10));
+                }
+            }
+        }
+        array.set(array.size() - 1, 7.0);
+        model.set(model.size() - 1, 7.0);
+        check(model, array);
+    }
+
+    @Test
+    public void copiesKeepTheirElementsWhileTheOriginalChanges() {
+        List<Object> model = new ArrayList<>();
+        ProbeArray array = numbers(0, model);
+        List<ProbeArray> copies = new ArrayList<>();
+        List<List<Object>> expected = new ArrayList<>();
+        for (int i = 0; i < LARGEST; ++i) {
+            if (contains(BOUNDARIES, i)) {
+                copies.add(array.copy());
+                expected.add(new ArrayList<>(model));
+                // writes in place again right after the copy, which must not reach the copy's nodes
+                if (i > 0) {
+                    array.set(0, -1.0);
+                    array.set(i - 1, -2.0);
+                    model.set(0, -1.0);
+                    model.set(i - 1, -2.0);
+                }
+            }
+            array.push((double) i);
+            model.add((double) i);
+        }
+        for (int i = 0; i < 5000; ++i) {
+            array.pop();
+            model.remove(model.size() - 1);
+        }
+        check(model, array);
+        for (int i = 0; i < copies.size(); ++i) {
+            check(expected.get(i), copies.get(i));
+        }
+    }
+
+    @Test
+    public void changesToACopyDoNotReachTheOriginal() {
+        List<Object> model = new ArrayList<>();
+        ProbeArray array = numbers(1057, model);
+        ProbeArray copy = array.copy();
+        List<Object> copyModel = new ArrayList<>(model);
+        copy.set(0, 100.0);
+        copy.set(1040, 200.0);
+        copy.push(300.0);
+        copy.pop();
+        copy.pop();
+        copyModel.set(0, 100.0);
+        copyModel.set(1040, 200.0);
+        copyModel.remove(copyModel.size() - 1);
+        check(model, array);
+        check(copyModel, copy);
+    }
+
+    @Test
+    public void numberLeavesBecomeGenericOnFirstOtherValue() {
+        List<Object> model = new ArrayList<>();
+        ProbeArray array = numbers(1100, model);
+        assertTrue(array.isNumeric());
+        assertEquals(1050.0, array.getDouble(1050), 0);
+        ProbeArray numeric = array.copy();
+
+        array.set(500, "five hundred");
+        model.set(500, "five hundred");
+        assertFalse(array.isNumeric());
+        check(model, array);
+
+        // the copy keeps its number leaves and its elements
+        assertTrue(numeric.isNumeric());
+        assertEquals(500.0, numeric.getDouble(500), 0);
+        List<Object> numbers = new ArrayList<>(model);
+        numbers.set(500, 500.0);
+        check(numbers, numeric);
+
+        array.push(null);
+        model.add(null);
+        array.push(1.5);
+        model.add(1.5);
+        check(model, array);
+    }
+
+    @Test
+    public void pushingOtherValuesPromotesTheTail() {
+        List<Object> model = new ArrayList<>();
+        ProbeArray array = numbers(40, model);
+        array.push("forty");
+        model.add("forty");
+        assertFalse(array.isNumeric());
+        check(model, array);
+        assertTrue(new ProbeArray(new Object[]{1.0, 2.0}).isNumeric());
+        assertFalse(new ProbeArray(new Object[]{1.0, "two"}).isNumeric());
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ProbeMapTest {
+
+    // "Aa" and "BB" have the same hashCode, so every string made of them collides with every other one as long
+    private static List<String> colliding(int count) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; keys.size() < count; ++i) {
+            StringBuilder key = new StringBuilder();
+            for (int bit = 0; bit < 6; ++bit) {
+                key.append((i >> bit & 1) == 0 ? "Aa" : "BB");
+            }
+            keys.add(key.toString());
+        }
+        return keys;
+    }
+
+    private static void check(Map<Object, Object> expected, ProbeMap actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Map.Entry<Object, Object> entry : expected.entrySet()) {
+            assertTrue("has " + entry.getKey(), actual.has(entry.getKey()));
+            assertEquals(entry.getValue(), actual.get(entry.getKey()));
+        }
+        Object[] keys = actual.keys();
+        assertEquals(expected.size(), keys.length);
+        assertEquals(expected.keySet(), new HashSet<>(Arrays.asList(keys)));
+    }
+
+    // the colliding keys still in the map, in the order keys() lists them
+    private static List<Object> order(ProbeMap map, List<String> colliding) {
+        List<Object> order = new ArrayList<>();
+        for (Object key : map.keys()) {
+            if (colliding.contains(key)) {
+                order.add(key);
+            }
+        }
+        return order;
+    }
+
+    @Test
+    public void removingFromTheMiddleOfAProbeRunKeepsTheRestReachable() {
+        List<String> keys = colliding(6);
+        ProbeMap map = new ProbeMap();
+        Map<Object, Object> expected = new HashMap<>();
+        for (int i = 0; i < keys.size(); ++i) {
+            map.put(keys.get(i), (double) i);
+            expected.put(keys.get(i), (double) i);
+        }
+        // keys with their own home slots, which the run of colliding keys may pass over
+        for (int i = 0; i < 4; ++i) {
+            map.put((double) i, "n" + i);
+            expected.put((double) i, "n" + i);
+        }
+        // a run of equal hashes fills slots in the order its keys arrived
+        assertEquals(new ArrayList<Object>(keys), order(map, keys));
+
+        map.remove(keys.get(2));
+        expected.remove(keys.get(2));
+        assertFalse(map.has(keys.get(2)));
+        assertNull(map.get(keys.get(2)));
+        check(expected, map);
+        List<Object> remaining = new ArrayList<Object>(keys);
+        remaining.remove(keys.get(2));
+        assertEquals(remaining, order(map, keys));
+
+        map.remove(keys.get(0));
+        map.remove(keys.get(5));
+        expected.remove(keys.get(0));
+        expected.remove(keys.get(5));
+        remaining.remove(keys.get(0));
+        remaining.remove(keys.get(5));
+        check(expected, map);
+        assertEquals(remaining, order(map, keys));
+
+        // a removed key goes back in at the end of its run
+        map.put(keys.get(2), "again");
+        expected.put(keys.get(2), "again");
+        remaining.add(keys.get(2));
+        check(expected, map);
+        assertEquals(remaining, order(map, keys));
+    }
+
+    @Test
+    public void removingAMissingKeyChangesNothing() {
+        List<String> keys = colliding(3);
+        ProbeMap map = new ProbeMap();
+        map.put(keys.get(0), 1.0);
+        map.put(keys.get(1), 2.0);
+        assertNull(map.remove(keys.get(2)));
+        assertNull(map.remove(7.0));
+        Map<Object, Object> expected = new HashMap<>();
+        expected.put(keys.get(0), 1.0);
+        expected.put(keys.get(1), 2.0);
+        check(expected, map);
+    }
+
+    @Test
+    public void matchesAHashMapUnderRandomPutsAndRemoves() {
+        Random random = new Random(42);
+        List<Object> pool = new ArrayList<>(colliding(64));
+        for (int i = 0; i < 64; ++i) {
+            pool.add((double) i);
+            pool.add("k" + i);
+        }
+        ProbeMap map = new ProbeMap();
+        Map<Object, Object> expected = new HashMap<>();
+        for (int step = 0; step < 20000; ++step) {
+            Object key = pool.get(random.nextInt(pool.size()));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                map.put(key, (double) step);
+                expected.put(key, (double) step);
+            }
+            if (step % 500 == 0) {
+                check(expected, map);
+            }
+        }
+        check(expected, map);
+        for (Object key : pool) {
+            assertEquals(expected.remove(key), map.remove(key));
+        }
+        assertEquals(0, map.size());
+        assertEquals(0, map.keys().length);
+    }
+
+    @Test
+    public void ropesAndStringsAreTheSameKey() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < Rope.FLAT; ++i) {
+            text.append('x');
+        }
+        CharSequence rope = Rope.concat(text.toString(), "y");
+        assertTrue(rope instanceof Rope);
+        ProbeMap map = new ProbeMap();
+        map.put(ProbeMap.key(rope), 1.0);
+        assertEquals(1.0, map.get(text + "y"));
+        assertNull(ProbeMap.key(new ProbeMap()));
+    }
+}
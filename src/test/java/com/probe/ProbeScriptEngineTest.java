@@ -0,0 +1,125 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProbeScriptEngineTest {
+    private ScriptEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new ScriptEngineManager().getEngineByName("probe");
+        engine.getContext().setWriter(new StringWriter());
+        engine.getContext().setErrorWriter(new StringWriter());
+    }
+
+    @Test
+    public void constantResults() throws ScriptException {
+        assertEquals(42.0, engine.eval("42;"));
+        assertEquals(3.0, engine.eval("1 + 2;"));
+        assertEquals("a", engine.eval("\"a\";"));
+        assertEquals(true, engine.eval("true;"));
+        assertEquals("ab", engine.eval("var x = 1; \"a\" + \"b\";"));
+        assertNull(engine.eval("nil;"));
+        assertNull(engine.eval("var x = 1;"));
+    }
+
+    @Test
+    public void bindingsBecomeGlobals() throws ScriptException {
+        CompiledScript rule = ((Compilable) engine).compile("amount > limit;");
+        Bindings bindings = engine.createBindings();
+        bindings.put("amount", 120);
+        bindings.put("limit", 100);
+        assertEquals(true, rule.eval(bindings));
+        bindings.put("limit", 200L);
+        assertEquals(false, rule.eval(bindings));
+    }
+
+    @Test
+    public void printWritesToTheContextWriter() throws ScriptException {
+        StringWriter out = new StringWriter();
+        engine.getContext().setWriter(out);
+        engine.eval("print \"hi\"; print [1, 2];");
+        assertEquals("hi\n[1, 2]\n", out.toString().replace(System.lineSeparator(), "\n"));
+    }
+
+    @Test
+    public void errorsAreScriptExceptions() {
+        try {
+            engine.eval("var q = ;");
+            fail();
+        } catch (ScriptException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("expect expression"));
+        }
+        try {
+            engine.eval("print 1;\nprint nope;");
+            fail();
+        } catch (ScriptException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Undefined variable 'nope'"));
+            assertEquals(2, e.getLineNumber());
+        }
+    }
+
+    @Test
+    public void evaluationsDoNotShareGlobals() throws ScriptException {
+        CompiledScript script = ((Compilable) engine).compile(
+                "var seen = nil; if (first) { var leaked = 1; } else { seen = leaked; } seen;");
+        Bindings first = engine.createBindings();
+        first.put("first", true);
+        script.eval(first);
+        Bindings second = engine.createBindings();
+        second.put("first", false);
+        try {
+            script.eval(second);
+            fail();
+        } catch (ScriptException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Undefined variable 'leaked'"));
+        }
+    }
+
+    @Test
+    public void compiledScriptRunsConcurrently() throws Exception {
+        final CompiledScript script = ((Compilable) engine).compile(
+                "fn fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); } fib(n);");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 100; ++i) {
+                final int n = i % 15;
+                results.add(pool.submit(() -> {
+                    Bindings bindings = engine.createBindings();
+                    bindings.put("n", n);
+                    return script.eval(bindings);
+                }));
+            }
+            for (int i = 0; i < results.size(); ++i) {
+                assertEquals((double) fib(i % 15), results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+}
@@ -0,0 +1,80 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ResolverTest {
+
+    private static void check(String expected, String source) {
+        assertEquals(expected, Scripts.run(source));
+        assertEquals(expected, Scripts.runOnVm(source));
+    }
+
+    @Test
+    public void localFunctionsCallSiblingsDeclaredLater() {
+        check("true\nfalse\n",
+                "{\n"
+                        + "  fn isEven(n) { if (n == 0) return true; return isOdd(n - 1); }\n"
+                        + "  fn isOdd(n) { if (n == 0) return false; return isEven(n - 1); }\n"
+                        + "  print isEven(10);\n"
+                        + "  print isOdd(10);\n"
+                        + "}\n");
+    }
+
+    @Test
+    public void functionBodiesHoistTheirFunctions() {
+        check("done\n",
+                "fn outer() {\n"
+                        + "  fn a(n) { if (n == 0) return \"done\"; return b(n - 1); }\n"
+                        + "  fn b(n) { return a(n); }\n"
+                        + "  return a(3);\n"
+                        + "}\n"
+                        + "print outer();\n");
+    }
+
+    @Test
+    public void localFunctionShadowsGlobalDeclaredLaterInBlock() {
+        check("local\nglobal\n",
+                "fn which() { return \"global\"; }\n"
+                        + "{\n"
+                        + "  fn caller() { return which(); }\n"
+                        + "  fn which() { return \"local\"; }\n"
+                        + "  print caller();\n"
+                        + "}\n"
+                        + "print which();\n");
+    }
+
+    @Test
+    public void functionsCanBeCalledAboveTheirDeclaration() {
+        check("2\n1\n3\n",
+                "print g();\n"
+                        + "fn g() { return 2; }\n"
+                        + "fn f() { var r = h(); fn h() { return 1; } return r; }\n"
+                        + "print f();\n"
+                        + "{ print k(); fn k() { return 3; } }\n");
+    }
+
+    @Test
+    public void hoistedFunctionsSeeVariablesDeclaredBeforeThem() {
+        check("nil\n5\n",
+                "fn f() {\n"
+                        + "  print g();\n"
+                        + "  var x = 5;\n"
+                        + "  fn g() { return x; }\n"
+                        + "  return g();\n"
+                        + "}\n"
+                        + "print f();\n");
+    }
+
+    @Test
+    public void redeclaredNamesKeepTheirOrder() {
+        check("1\n2\n3\n",
+                "fn g() { return 1; }\n"
+                        + "print g();\n"
+                        + "fn g() { return 2; }\n"
+                        + "print g();\n"
+                        + "fn f(p) { var r = p(); fn p() { return 0; } return r; }\n"
+                        + "print f(fn() { return 3; });\n");
+    }
+}
@@ -0,0 +1,120 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptCacheTest {
+    private static final String SOURCE = "fn square(x) { return x * x; }\n"
+            + "var words = {\"a\": [1, 2], \"b\": nil};\n"
+            + "var i = 0;\n"
+            + "while (i < 3) { print square(i) + len(words[\"a\"]); i = i + 1; }\n";
+
+    private Path directory;
+    private ScriptCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("probe-cache");
+        cache = new ScriptCache(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Path entry : entries()) {
+            Files.delete(entry);
+        }
+        Files.delete(directory);
+    }
+
+    private List<Path> entries() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private Path storeSource() throws IOException {
+        ErrorReporter reporter = new ErrorReporter(SOURCE, new StringWriter());
+        cache.store(SOURCE, Probe.parse(SOURCE, reporter));
+        List<Path> entries = entries();
+        assertEquals(1, entries.size());
+        return entries.get(0);
+    }
+
+    private static String run(List<Stmt> stmts) {
+        ErrorReporter reporter = new ErrorReporter(SOURCE, new StringWriter());
+        Globals globals = new Globals();
+        new Resolver(globals, reporter).resolve(stmts);
+        StringWriter out = new StringWriter();
+        Interpreter interpreter = new Interpreter(reporter, globals);
+        interpreter.setOutput(new PrintWriter(out, true));
+        interpreter.run(stmts);
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    public void hitRunsLikeTheParsedScript() throws IOException {
+        storeSource();
+        List<Stmt> loaded = cache.load(SOURCE);
+        assertNotNull(loaded);
+        assertEquals("2\n3\n6\n", run(loaded));
+        assertEquals(Scripts.run(SOURCE), run(cache.load(SOURCE)));
+    }
+
+    @Test
+    public void changedSourceMisses() throws IOException {
+        storeSource();
+        assertNull(cache.load(SOURCE + "print 1;\n"));
+        // same length, different text
+        assertNull(cache.load(SOURCE.replace("square", "cube__")));
+        assertNull(new ScriptCache(directory.resolve("missing")).load(SOURCE));
+    }
+
+    @Test
+    public void truncatedEntryMisses() throws IOException {
+        Path entry = storeSource();
+        byte[] bytes = Files.readAllBytes(entry);
+        for (int length : new int[]{0, 3, bytes.length / 2, bytes.length - 1}) {
+            Files.write(entry, Arrays.copyOf(bytes, length));
+            assertNull("entry cut to " + length + " bytes", cache.load(SOURCE));
+        }
+    }
+
+    @Test
+    public void corruptEntryMissesAndIsRewritten() throws IOException {
+        Path entry = storeSource();
+        byte[] bytes = Files.readAllBytes(entry);
+
+        byte[] header = bytes.clone();
+        header[0] ^= 0x55;
+        Files.write(entry, header);
+        assertNull(cache.load(SOURCE));
+
+        // a sound header in front of a body that makes no sense
+        byte[] body = bytes.clone();
+        Arrays.fill(body, bytes.length / 2, bytes.length, (byte) 0xFF);
+        Files.write(entry, body);
+        assertNull(cache.load(SOURCE));
+
+        storeSource();
+        assertEquals("2\n3\n6\n", run(cache.load(SOURCE)));
+    }
+}
@@ -0,0 +1,84 @@
+package com.probe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+/**
+ * Runs Probe source the way {@link Probe} does and returns what it printed, followed by the first error if
+ * there was one.
+ */
+final class Scripts {
+    private Scripts() {
+    }
+
+    static String run(String source) {
+        return run(source, null);
+    }
+
+    static String run(String source, Budget budget) {
+        StringWriter out = new StringWriter();
+        ErrorReporter reporter = new ErrorReporter(source, new StringWriter());
+        List<Stmt> stmts = Probe.parse(source, reporter);
+        if (stmts != null) {
+            Globals globals = new Globals();
+            Resolver resolver = new Resolver(globals, reporter);
+            resolver.resolve(stmts);
+            if (!resolver.isError()) {
+                Interpreter interpreter = new Interpreter(reporter, globals);
+                interpreter.setOutput(new PrintWriter(out, true));
+                interpreter.setBudget(budget);
+                interpreter.interpret(stmts);
+            }
+        }
+        return output(out.toString(), reporter);
+    }
+
+    // with --stream, each top-level declaration runs as it is parsed
+    static String stream(String source) {
+        StringWriter out = new StringWriter();
+        ErrorReporter reporter = new ErrorReporter(source, new StringWriter());
+        Probe.stream(source, reporter, new PrintWriter(out, true), null);
+        return output(out.toString(), reporter);
+    }
+
+    // the VM prints to System.out, so that is swapped out while it runs
+    static String runOnVm(String source) {
+        return runOnVm(source, null);
+    }
+
+    static String runOnVm(String source, Budget budget) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        ErrorReporter reporter = new ErrorReporter(source, new StringWriter());
+        try {
+            System.setOut(new PrintStream(bytes, true, "UTF-8"));
+            List<Stmt> stmts = Probe.parse(source, reporter);
+            if (stmts != null) {
+                Globals globals = new Globals();
+                Resolver resolver = new Resolver(globals, reporter);
+                resolver.resolve(stmts);
+                if (!resolver.isError()) {
+                    Probe.runOnVm(stmts, globals, reporter, budget);
+                }
+            }
+            System.out.flush();
+            return output(bytes.toString("UTF-8"), reporter);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    private static String output(String printed, ErrorReporter reporter) {
+        String normalized = printed.replace(System.lineSeparator(), "\n");
+        if (reporter.firstMessage() == null) {
+            return normalized;
+        }
+        return normalized + "error: " + reporter.firstMessage() + "\n";
+    }
+}
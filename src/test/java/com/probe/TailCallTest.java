@@ -0,0 +1,80 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Calls in tail position take no stack, so recursion a million deep finishes. The test task runs this with
+ * {@code probe.jit.threshold} at 1, where the functions are compiled from their first call, and the
+ * testInterpreted task runs it again with the JIT off.
+ */
+public class TailCallTest {
+    private static final int DEPTH = 1_000_000;
+
+    private static final String LOOP = "fn loop(n, total) {\n"
+            + "    if (n == 0) return total;\n"
+            + "    return loop(n - 1, total + 2);\n"
+            + "}\n"
+            + "print loop(" + DEPTH + ", 0) == " + 2 * DEPTH + ";\n";
+
+    private static final String EVEN_ODD = "fn ev(n) {\n"
+            + "    if (n == 0) return true;\n"
+            + "    return od(n - 1);\n"
+            + "}\n"
+            + "fn od(n) {\n"
+            + "    if (n == 0) return false;\n"
+            + "    return ev(n - 1);\n"
+            + "}\n"
+            + "print ev(" + DEPTH + ");\n"
+            + "print od(" + DEPTH + ");\n"
+            + "print od(" + (DEPTH + 1) + ");\n";
+
+    // runs the script on the interpreter and checks the JIT compiled its functions when it is on
+    private static String interpret(String source) {
+        ErrorReporter reporter = new ErrorReporter(source, new StringWriter());
+        List<Stmt> stmts = Probe.parse(source, reporter);
+        assertNotNull(reporter.firstMessage(), stmts);
+        Globals globals = new Globals();
+        new Resolver(globals, reporter).resolve(stmts);
+        StringWriter out = new StringWriter();
+        Interpreter interpreter = new Interpreter(reporter, globals);
+        interpreter.setOutput(new PrintWriter(out, true));
+        interpreter.interpret(stmts);
+        if (JitCompiler.THRESHOLD == 1) {
+            for (Stmt stmt : stmts) {
+                if (stmt instanceof FunctionDeclaration) {
+                    assertNotNull(((FunctionDeclaration) stmt).name.lexeme + " was not compiled",
+                            ((FunctionDeclaration) stmt).compiled);
+                }
+            }
+        }
+        return out.toString().replace(System.lineSeparator(), "\n")
+                + (reporter.firstMessage() == null ? "" : "error: " + reporter.firstMessage() + "\n");
+    }
+
+    @Test
+    public void selfRecursionRunsInConstantStack() {
+        assertEquals("true\n", interpret(LOOP));
+        assertEquals("true\n", Scripts.runOnVm(LOOP));
+    }
+
+    @Test
+    public void mutualRecursionRunsInConstantStack() {
+        assertEquals("true\nfalse\ntrue\n", interpret(EVEN_ODD));
+        assertEquals("true\nfalse\ntrue\n", Scripts.runOnVm(EVEN_ODD));
+    }
+
+    @Test
+    public void anonymousFunctionsCallInTailPositionToo() {
+        String source = "var count = fn(n) { if (n == 0) return \"done\"; return count(n - 1); };\n"
+                + "print count(" + DEPTH + ");\n";
+        assertEquals("done\n", Scripts.run(source));
+        assertEquals("done\n", Scripts.runOnVm(source));
+    }
+}
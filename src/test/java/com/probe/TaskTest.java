@@ -0,0 +1,106 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * spawn, await and channels. The tasks run on a pool with a thread per core, so the scripts here start more tasks
+ * than that which wait on each other.
+ */
+public class TaskTest {
+    private static final int TASKS = Runtime.getRuntime().availableProcessors() * 4 + 8;
+
+    @Test
+    public void awaitReturnsWhatTheTaskReturned() {
+        assertEquals("3\n<task>\n", Scripts.run("var t = spawn(fn() { return 1 + 2; });\n"
+                + "print await(t);\n"
+                + "print t;\n"));
+        // a task can be awaited again, and more than once from other tasks
+        assertEquals("done\ndone\ndone\n", Scripts.run("var t = spawn(fn() { return \"done\"; });\n"
+                + "var u = spawn(fn() { return await(t); });\n"
+                + "print await(t);\nprint await(u);\nprint await(t);\n"));
+    }
+
+    @Test
+    public void channelsKeepTheOrderValuesWereSentIn() {
+        assertEquals("ok\n", Scripts.run("var ch = channel(4);\n"
+                + "var producer = spawn(fn() {\n"
+                + "    for (var i = 0; i < 1000; i = i + 1) send(ch, i);\n"
+                + "    send(ch, nil);\n"
+                + "});\n"
+                + "var ok = true;\n"
+                + "var expected = 0;\n"
+                + "var v = recv(ch);\n"
+                + "while (v != nil) { if (v != expected) ok = false; expected = expected + 1; v = recv(ch); }\n"
+                + "await(producer);\n"
+                + "if (ok and expected == 1000) print \"ok\";\n"));
+        assertEquals("nil\n1\n", Scripts.run("var ch = channel(2);\nsend(ch, nil);\nsend(ch, 1);\n"
+                + "print recv(ch);\nprint recv(ch);\n"));
+    }
+
+    @Test
+    public void blockedTasksDoNotHoldUpThePool() {
+        // task i waits for task i + 1, which starts later, so every worker the pool starts with blocks at first
+        assertEquals(TASKS + "\n", Scripts.run("var chs = [];\n"
+                + "for (var i = 0; i <= " + TASKS + "; i = i + 1) push(chs, channel(1));\n"
+                + "var tasks = [];\n"
+                + "for (var i = 0; i < " + TASKS + "; i = i + 1) {\n"
+                + "    var from = chs[i + 1];\n"
+                + "    var to = chs[i];\n"
+                + "    push(tasks, spawn(fn() { return send(to, recv(from) + 1); }));\n"
+                + "}\n"
+                + "send(chs[" + TASKS + "], 0);\n"
+                + "print recv(chs[0]);\n"));
+        // a full channel blocks senders the same way
+        assertEquals(TASKS + "\n", Scripts.run("var ch = channel(1);\n"
+                + "var tasks = [];\n"
+                + "for (var i = 0; i < " + TASKS + "; i = i + 1) push(tasks, spawn(fn() { return send(ch, 1); }));\n"
+                + "var total = 0;\n"
+                + "for (var i = 0; i < " + TASKS + "; i = i + 1) total = total + recv(ch);\n"
+                + "for (var i = 0; i < " + TASKS + "; i = i + 1) await(tasks[i]);\n"
+                + "print total;\n"));
+    }
+
+    @Test
+    public void awaitRaisesTheTasksError() {
+        assertEquals("error: str or num\n", Scripts.run("var t = spawn(fn() { return 1 + nil; });\n"
+                + "print await(t);\n"
+                + "print \"after\";\n"));
+        // through a task awaiting another
+        assertEquals("error: str or num\n", Scripts.run("var t = spawn(fn() { return 1 + nil; });\n"
+                + "var u = spawn(fn() { return await(t); });\n"
+                + "print await(u);\n"));
+        // a task that fails is not awaited until the script asks
+        assertEquals("started\nerror: Expected channel\n", Scripts.run("var t = spawn(fn() { return recv(1); });\n"
+                + "print \"started\";\n"
+                + "await(t);\n"));
+    }
+
+    @Test
+    public void tasksShareTheVariablesTheyCloseOver() {
+        assertEquals("2\n[1, 2]\n", Scripts.run("var x = 1;\n"
+                + "var seen = [];\n"
+                + "var t = spawn(fn() { push(seen, x); x = 2; });\n"
+                + "await(t);\n"
+                + "push(seen, x);\n"
+                + "print x;\n"
+                + "print seen;\n"));
+    }
+
+    @Test
+    public void spawnIsNotAvailableOnTheVm() {
+        assertEquals("false\nerror: spawn is not available on the VM\n",
+                Scripts.runOnVm("print 1 + 1 == 3;\nspawn(fn() { return 1; });\nprint \"after\";\n"));
+    }
+
+    @Test
+    public void argumentsAreChecked() {
+        assertEquals("error: Expected function of no arguments\n", Scripts.run("spawn(fn(x) { return x; });\n"));
+        assertEquals("error: Expected task\n", Scripts.run("await(1);\n"));
+        assertEquals("error: Expected a capacity of at least 1\n", Scripts.run("channel(0);\n"));
+        assertEquals("error: Expected a capacity of at least 1\n", Scripts.run("channel(1.5);\n"));
+        assertEquals("error: Expected channel\n", Scripts.run("send(1, 2);\n"));
+        assertEquals("error: Expected channel\n", Scripts.run("recv(nil);\n"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class TokenStreamTest {
+    private static final String SOURCE = "fn square(x) { return x * x; }\n"
+            + "var words = {\"a\": [1, 2.5], \"b\": nil};\n"
+            + "// a comment\n"
+            + "for (var i = 0; i < 3; i = i + 1) { print square(i) + len(words[\"a\"]); }\n"
+            + "print \"done\" + \"!\";\n";
+
+    private static ErrorReporter reporter(String source) {
+        return new ErrorReporter(source, new StringWriter());
+    }
+
+    @Test
+    public void streamedTokensMatchScannedOnes() {
+        TokenStream scanned = new Lexer(SOURCE, reporter(SOURCE)).scan();
+        TokenStream streamed = new Lexer(SOURCE, reporter(SOURCE)).stream();
+        for (int i = 0; ; ++i) {
+            assertEquals(scanned.type(i), streamed.type(i));
+            assertEquals(scanned.lexeme(i), streamed.lexeme(i));
+            assertEquals(scanned.value(i), streamed.value(i));
+            assertEquals(scanned.line(i), streamed.line(i));
+            assertEquals(scanned.column(i), streamed.column(i));
+            if (scanned.type(i) == TokenType.EOF) {
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void releasedTokensKeepTheirPositions() {
+        TokenStream scanned = new Lexer(SOURCE, reporter(SOURCE)).scan();
+        TokenStream streamed = new Lexer(SOURCE, reporter(SOURCE)).stream();
+        int i = 0;
+        while (streamed.type(i) != TokenType.EOF) {
+            assertEquals(scanned.lexeme(i), streamed.lexeme(i));
+            // only the token being read is held, and releasing twice changes nothing
+            streamed.release(i);
+            streamed.release(i);
+            assertEquals(i + 1, streamed.end());
+            i++;
+        }
+        assertEquals(TokenType.EOF, scanned.type(i));
+    }
+
+    @Test
+    public void releasingAheadOfTheLexerLeavesTheRest() {
+        TokenStream streamed = new Lexer(SOURCE, reporter(SOURCE)).stream();
+        assertEquals(TokenType.FN, streamed.type(0));
+        streamed.release(1);
+        assertEquals("square", streamed.lexeme(1));
+        assertEquals(TokenType.LEFT_PAREN, streamed.type(2));
+    }
+
+    @Test
+    public void parserTakesOneDeclarationAtATime() {
+        Parser parser = new Parser(new Lexer(SOURCE, reporter(SOURCE)).stream(), reporter(SOURCE));
+        assertTrue(parser.next() instanceof FunctionDeclaration);
+        assertTrue(parser.next() instanceof Stmt.Var);
+        assertTrue(parser.next() instanceof Stmt.Block);
+        assertTrue(parser.hasNext());
+        assertTrue(parser.next() instanceof Stmt.Print);
+        assertFalse(parser.hasNext());
+        assertFalse(parser.isError());
+    }
+
+    @Test
+    public void streamingRunsLikeAWholeScript() {
+        assertEquals(Scripts.run(SOURCE), Scripts.stream(SOURCE));
+        assertEquals("2\n3\n6\ndone!\n", Scripts.stream(SOURCE));
+    }
+
+    @Test
+    public void streamingRunsWhatCameBeforeAnError() {
+        assertEquals("1\nerror: expect expression\n", Scripts.stream("print 1;\nprint 2 +;\nprint 3;\n"));
+        assertEquals("1\nerror: Unexpected character '#' \n", Scripts.stream("print 1;\nprint #;\nprint 3;\n"));
+        assertEquals("1\nerror: Undefined variable 'h'.\n", Scripts.stream("print 1;\nprint h();\nfn g() {}\n"));
+    }
+
+    @Test
+    public void functionsSeeLaterTopLevelFunctionsOnceTheyAreCalled() {
+        String source = "fn a() { return b(); }\nfn b() { return 1; }\nprint a();\n";
+        assertEquals("1\n", Scripts.stream(source));
+        // functions inside a statement are hoisted within it
+        assertEquals("2\n", Scripts.stream("{ print c(); fn c() { return 2; } }\n"));
+    }
+
+    @Test
+    public void callingATopLevelFunctionDeclaredFurtherDownIsReported() {
+        String source = "print 1;\nprint g();\nvar x = { \"g\": fn() {} };\nfn g() { return 2; }\n";
+        assertEquals("1\n2\n", Scripts.run(source));
+        assertEquals("1\nerror: Undefined variable 'g'. It is a function declared further down, and --stream runs"
+                + " each top-level statement before reading the ones after it.\n", Scripts.stream(source));
+        // a function of that name nested in another one is not a top-level declaration
+        assertEquals("error: Undefined variable 'g'.\n", Scripts.stream("print g();\nfn f() { fn g() {} }\n"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.probe;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ValuesTest {
+
+    private static void check(String expected, String source) {
+        assertEquals(expected, Scripts.run(source));
+        assertEquals(expected, Scripts.runOnVm(source));
+    }
+
+    @Test
+    public void functionsPrintTheSameOnBothEngines() {
+        check("<fn add>\n<fn anonymous>\n<fn len>\n<fn add>\n",
+                "fn add(x, y) { return x + y; }\n"
+                        + "print add;\n"
+                        + "print fn(x) { return x; };\n"
+                        + "print len;\n"
+                        + "print memo(add);\n");
+    }
+
+    @Test
+    public void functionsInsideValuesPrintByName() {
+        check("[<fn f>, 1]\n{k: <fn f>}\n",
+                "fn f() { return 1; }\n"
+                        + "print [f, 1];\n"
+                        + "print {\"k\": f};\n");
+    }
+
+    @Test
+    public void arraysAndMapsThatContainThemselvesPrint() {
+        check("[1, [...]]\n{self: {...}}\n[[[...]], {m: {...}}]\n",
+                "var a = [1];\n"
+                        + "push(a, a);\n"
+                        + "print a;\n"
+                        + "var m = {};\n"
+                        + "m[\"self\"] = m;\n"
+                        + "print m;\n"
+                        + "var b = [];\n"
+                        + "push(b, b);\n"
+                        + "var n = {\"m\": nil};\n"
+                        + "n[\"m\"] = n;\n"
+                        + "print [b, n];\n");
+    }
+
+    @Test
+    public void sharedValuesAreNotCycles() {
+        check("[[1], [1]]\n", "var b = [1];\nprint [b, b];\n");
+    }
+
+    @Test
+    public void memoPassesCyclicArgumentsThrough() {
+        check("2\n2\n0\n0\n",
+                "var count = memo(fn(x) { return len(x); });\n"
+                        + "var a = [1];\n"
+                        + "push(a, a);\n"
+                        + "print count(a);\n"
+                        + "print count(a);\n"
+                        + "print memostats(count)[\"hits\"];\n"
+                        + "print memostats(count)[\"size\"];\n");
+    }
+}